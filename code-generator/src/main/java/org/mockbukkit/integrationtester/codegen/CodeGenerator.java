@@ -1,26 +1,37 @@
 package org.mockbukkit.integrationtester.codegen;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonArray;
 import com.google.gson.stream.JsonWriter;
 import com.palantir.javapoet.*;
 import io.github.classgraph.ClassGraph;
 import io.github.classgraph.ClassInfo;
 import io.github.classgraph.ClassInfoList;
+import io.github.classgraph.MethodInfo;
 import io.github.classgraph.ScanResult;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.BoundingBox;
+import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.mockbukkit.integrationtester.core.io.ClassIndex;
+import org.mockbukkit.integrationtester.core.util.MirrorFactories;
 
 import javax.lang.model.element.Modifier;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.lang.reflect.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class CodeGenerator {
@@ -28,8 +39,21 @@ public class CodeGenerator {
     private final String targetPackageName;
     private final Map<Class<?>, ClassName> classNames = new HashMap<>();
     private final Set<Class<?>> alreadyScanned = new HashSet<>();
+    private final Map<String, Integer> memberIds = new HashMap<>();
+    private final List<String> memberSignatures = new ArrayList<>();
+    // Static constants the client resolves in bulk, see StaticFields in the test client
+    private final Set<Integer> staticFieldIds = new LinkedHashSet<>();
+    // Owner and descriptor of methods annotated to never return null, the annotations are not retained at runtime
+    private final Set<String> notNullMethods = new HashSet<>();
+    // Whether a mirrored class extends or implements the key, by the mirrored class or interface
+    private final Map<Class<?>, Boolean> mirroredSubtypes = new HashMap<>();
+    private final ResultStabilityRules resultStabilityRules = ResultStabilityRules.load();
     private final static Pattern PACKAGE_NAME = Pattern.compile("^(.+)\\.[A-Z]");
     private static final ClassName MIRROR_HANDLER = ClassName.get("org.mockbukkit.integrationtester.testclient", "MirrorHandler");
+    private static final ClassName RECEIVED = ClassName.get(MirrorFactories.Received.class);
+    private static final List<String> NOT_NULL_ANNOTATIONS = List.of("org.jetbrains.annotations.NotNull", "org.jspecify.annotations.NonNull");
+    // Sent by value, see BukkitValueCodecs in the test server
+    private static final List<Class<?>> COPIED_TYPES = List.of(Location.class, Vector.class, BoundingBox.class, NamespacedKey.class, ItemStack.class, Component.class);
 
     public static void main(String[] args) throws IOException {
         if (args.length != 1) {
@@ -39,7 +63,7 @@ public class CodeGenerator {
         File outputFolder = new File(args[0]);
         File classFolder = new File(outputFolder, "java");
         File resourceFolder = new File(outputFolder, "resources");
-        CodeGenerator codeGenerator = new CodeGenerator("org.mockbukkit.integrationtester");
+        CodeGenerator codeGenerator = new CodeGenerator("org.mockbukkit.integrationtester", sortedMemberSignatures("org.mockbukkit.integrationtester"));
         List<ClassInfo> outerClasses = new ArrayList<>();
         for (String operationIncludedPackage : operationIncludedPackages()) {
             outerClasses.addAll(codeGenerator.findClassesInPackage(operationIncludedPackage));
@@ -67,34 +91,92 @@ public class CodeGenerator {
                 }
             }
         });
-        JsonObject mirrorClassRemapping = new JsonObject();
+        Map<String, String> mirrorClassRemapping = new HashMap<>();
         for (Map.Entry<Class<?>, ClassName> classEntry : codeGenerator.classNames.entrySet()) {
-            mirrorClassRemapping.add(classEntry.getKey().getName(), new JsonPrimitive(classEntry.getValue().canonicalName()));
+            mirrorClassRemapping.put(classEntry.getKey().getName(), classEntry.getValue().reflectionName());
         }
         if(!resourceFolder.exists() && !resourceFolder.mkdirs()) {
             throw new IOException("Could not generate directory, possible permission issue");
         }
-        File classRemappingFile = new File(resourceFolder, "classRemapping.json");
-        if(!classRemappingFile.exists() && !classRemappingFile.createNewFile()) {
+        File classIndexFile = new File(resourceFolder, ClassIndex.RESOURCE.substring(1));
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(classIndexFile))) {
+            ClassIndex.write(mirrorClassRemapping, outputStream);
+        }
+        JsonArray memberIds = new JsonArray();
+        codeGenerator.memberSignatures.forEach(memberIds::add);
+        File memberIdsFile = new File(resourceFolder, "memberIds.json");
+        if (!memberIdsFile.exists() && !memberIdsFile.createNewFile()) {
             throw new IOException("Could not create file, possible permission issue");
         }
-        try (PrintWriter writer = new PrintWriter(classRemappingFile, StandardCharsets.UTF_8)) {
+        try (PrintWriter writer = new PrintWriter(memberIdsFile, StandardCharsets.UTF_8)) {
             JsonWriter jsonWriter = new JsonWriter(writer);
             jsonWriter.setIndent("  ");
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            gson.toJson(mirrorClassRemapping, jsonWriter);
+            new Gson().toJson(memberIds, jsonWriter);
+            writer.print("\n");
+        }
+        JsonArray staticFieldIds = new JsonArray();
+        codeGenerator.staticFieldIds.forEach(staticFieldIds::add);
+        File staticFieldsFile = new File(resourceFolder, "staticFields.json");
+        if (!staticFieldsFile.exists() && !staticFieldsFile.createNewFile()) {
+            throw new IOException("Could not create file, possible permission issue");
+        }
+        try (PrintWriter writer = new PrintWriter(staticFieldsFile, StandardCharsets.UTF_8)) {
+            new Gson().toJson(staticFieldIds, writer);
             writer.print("\n");
         }
     }
 
     public CodeGenerator(String targetPackageName) {
+        this(targetPackageName, List.of());
+    }
+
+    /**
+     * @param memberSignatures The members to number first, in this order
+     */
+    public CodeGenerator(String targetPackageName, List<String> memberSignatures) {
         this.targetPackageName = targetPackageName;
+        for (String signature : memberSignatures) {
+            memberIds.put(signature, this.memberSignatures.size());
+            this.memberSignatures.add(signature);
+        }
+    }
+
+    /**
+     * Generate every mirror once without writing it, only to learn which members get an id. Sorted, so the ids do not
+     * depend on the order classes and members are found in, which reflection leaves unspecified
+     */
+    private static List<String> sortedMemberSignatures(String targetPackageName) {
+        CodeGenerator dryRun = new CodeGenerator(targetPackageName);
+        List<ClassInfo> outerClasses = new ArrayList<>();
+        for (String operationIncludedPackage : operationIncludedPackages()) {
+            outerClasses.addAll(dryRun.findClassesInPackage(operationIncludedPackage));
+        }
+        outerClasses.forEach(dryRun::createTypeSpec);
+        return dryRun.memberSignatures.stream().sorted().toList();
+    }
+
+    /**
+     * Ids are looked up from the sorted signatures the generator was created with, the table is written by the same run
+     * that generates the mirror classes
+     */
+    private int getMemberId(Member member) {
+        return memberIds.computeIfAbsent(Util.getMemberSignature(member), signature -> {
+            memberSignatures.add(signature);
+            return memberSignatures.size() - 1;
+        });
     }
 
     private List<ClassInfo> findClassesInPackage(String packageName) {
         try (ScanResult scanResult = new ClassGraph().enableAllInfo().acceptPackages(packageName).scan()) {
             ClassInfoList classInfoList = scanResult.getAllClasses();
             List<ClassInfo> classInfos = classInfoList.stream().filter(classInfo -> (classInfo.isPublic() || classInfo.isPackageVisible()) && !classInfo.isInnerClass()).toList();
+            for (ClassInfo classInfo : classInfoList) {
+                for (MethodInfo methodInfo : classInfo.getDeclaredMethodInfo()) {
+                    if (NOT_NULL_ANNOTATIONS.stream().anyMatch(methodInfo::hasAnnotation)) {
+                        notNullMethods.add(classInfo.getName() + "#" + methodInfo.getName() + methodInfo.getTypeDescriptorStr());
+                    }
+                }
+            }
             classNames.putAll(determineClassNames(classInfos, ""));
             return classInfos;
         }
@@ -229,11 +311,9 @@ public class CodeGenerator {
             }
         }
         if (!hasGeneratedEmptyConstructor) {
-            ClassName mirrorHandler = ClassName.get("org.mockbukkit.integrationtester.testclient", "MirrorHandler");
             CodeBlock.Builder codeBlockBuilder = CodeBlock.builder();
             addSuperConstructorCall(classToReplicate, codeBlockBuilder, null);
             fillFields(classToReplicate, codeBlockBuilder);
-            codeBlockBuilder.addStatement("$T.trackNew(this, $S)", mirrorHandler, classToReplicate);
             MethodSpec.Builder constructorBuilder = MethodSpec.constructorBuilder()
                     .addModifiers(Modifier.PROTECTED)
                     .addCode(codeBlockBuilder.build());
@@ -244,13 +324,55 @@ public class CodeGenerator {
             }
             output.add(constructorBuilder.build());
         }
+        if (!classToReplicate.isEnum()) {
+            output.add(generateReceivedConstructor(classToReplicate, redefinitions));
+        }
         return output;
     }
 
+    /**
+     * The constructor mirrors of received objects are created with, see {@link MirrorFactories}. It only registers the
+     * mirror for its fields, nothing is sent to the server
+     */
+    private MethodSpec generateReceivedConstructor(Class<?> classToReplicate, Map<String, String> redefinitions) {
+        CodeBlock.Builder codeBlockBuilder = CodeBlock.builder();
+        if (classNames.containsKey(classToReplicate.getSuperclass())) {
+            codeBlockBuilder.addStatement("super(received)");
+        } else {
+            addSuperConstructorCall(classToReplicate, codeBlockBuilder, redefinitions);
+        }
+        fillFields(classToReplicate, codeBlockBuilder);
+        return MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PROTECTED)
+                .addParameter(RECEIVED, "received")
+                .addCode(codeBlockBuilder.build())
+                .addExceptions(getReceivedConstructorExceptions(classToReplicate).stream()
+                        .map(exception -> Util.getTypeName(exception, redefinitions, classNames))
+                        .toList())
+                .build();
+    }
+
+    private List<Class<?>> getReceivedConstructorExceptions(Class<?> clazz) {
+        if (clazz.getSuperclass() == null || clazz.getSuperclass() == Object.class) {
+            return List.of();
+        }
+        if (classNames.containsKey(clazz.getSuperclass())) {
+            return getReceivedConstructorExceptions(clazz.getSuperclass());
+        }
+        Constructor<?> superConstructor = getSuperConstructor(clazz);
+        return superConstructor == null ? List.of() : List.of(superConstructor.getExceptionTypes());
+    }
+
+    /**
+     * Creating a mirror with a public constructor creates the object on the server as well, see
+     * {@link #addNewObjectCall}
+     */
     private MethodSpec generateConstructor(Class<?> classToReplicate, Constructor<?> constructor, Map<String, String> redefinitions) {
         CodeBlock.Builder codeBlockBuilder = CodeBlock.builder();
         addSuperConstructorCall(classToReplicate, codeBlockBuilder, redefinitions);
-        codeBlockBuilder.addStatement("$T.trackNew(this, $S$L)", MIRROR_HANDLER, classToReplicate, generateParameterString(constructor));
+        if (!classToReplicate.isEnum() && !java.lang.reflect.Modifier.isAbstract(classToReplicate.getModifiers())) {
+            addNewObjectCall(classToReplicate, constructor, codeBlockBuilder);
+        }
         fillFields(classToReplicate, codeBlockBuilder);
 
         MethodSpec.Builder builder = MethodSpec.constructorBuilder().addCode(codeBlockBuilder.build())
@@ -267,25 +389,29 @@ public class CodeGenerator {
         return builder.build();
     }
 
+    private void addNewObjectCall(Class<?> classToReplicate, Constructor<?> constructor, CodeBlock.Builder codeBlockBuilder) {
+        StringBuilder parameters = new StringBuilder();
+        for (Parameter parameter : constructor.getParameters()) {
+            parameters.append(", ").append(parameter.getName());
+        }
+        codeBlockBuilder.addStatement("$T.handleNew(this, $T.class, $L$L)", MIRROR_HANDLER, classNames.get(classToReplicate),
+                getMemberId(constructor), parameters);
+    }
+
+    /**
+     * All public fields are fetched in one snapshot, filled in once the mirror is registered
+     */
     private void fillFields(Class<?> classToReplicate, CodeBlock.Builder codeBlockBuilder) {
+        StringBuilder fieldIds = new StringBuilder();
         for (Field field : classToReplicate.getDeclaredFields()) {
             if (java.lang.reflect.Modifier.isStatic(field.getModifiers()) || !java.lang.reflect.Modifier.isPublic(field.getModifiers())) {
                 continue;
             }
-            codeBlockBuilder.addStatement("this.$L = $T.handleField($S, $S, this)", field.getName(), MIRROR_HANDLER, field.getName(), classToReplicate);
-        }
-    }
-
-    private String generateParameterString(Constructor<?> constructor) {
-        if (constructor.getParameters().length == 0 || constructor.getDeclaringClass().isEnum()) {
-            return "";
+            fieldIds.append(", ").append(getMemberId(field));
         }
-        StringBuilder stringBuilder = new StringBuilder();
-        for (Parameter parameter : constructor.getParameters()) {
-            stringBuilder.append(", ");
-            stringBuilder.append(parameter.getName());
+        if (!fieldIds.isEmpty()) {
+            codeBlockBuilder.addStatement("$T.handleFields(this$L)", MIRROR_HANDLER, fieldIds);
         }
-        return stringBuilder.toString();
     }
 
     private void addSuperConstructorCall(Class<?> clazz, CodeBlock.Builder codeBlock, Map<String, String> redefinitions) {
@@ -349,9 +475,37 @@ public class CodeGenerator {
             if (method.isBridge()) {
                 continue;
             }
-            insertMethodData(method, MethodData.from(method, classNames, isImplementation, classToReplicate.isEnum(), redefinitions.getOrDefault(method.getDeclaringClass(), new HashMap<>())), methodData);
+            String resultStability = resultStabilityRules.classify(method, classNames::containsKey);
+            // A cached immutable result beats not waiting for it, every pipelined call still reaches the server
+            ClassName pipelinedResultType = "IMMUTABLE".equals(resultStability) ? null : getPipelinedResultType(method);
+            insertMethodData(method, MethodData.from(method, classNames, isImplementation, classToReplicate.isEnum(), redefinitions.getOrDefault(method.getDeclaringClass(), new HashMap<>()), pipelinedResultType, pipelinedResultType == null ? resultStability : null), methodData);
         }
-        return methodData.stream().map(Pair::t1).map(methodData1 -> methodData1.toMethodSpec(classToReplicate)).toList();
+        return methodData.stream().map(pair -> pair.t1().toMethodSpec(getMemberId(pair.t2()))).toList();
+    }
+
+    /**
+     * Results that are mirrored interfaces and never null can be used before the call returned, see
+     * MirrorHandler#handlePipelined. Only if no other mirrored type implements the interface, the stand-in could not be
+     * cast to the one the server actually returns otherwise
+     */
+    private @Nullable ClassName getPipelinedResultType(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (method.getGenericReturnType() != returnType || !returnType.isInterface() || returnType.isAnnotation() || !classNames.containsKey(returnType)) {
+            return null;
+        }
+        // A copy can only be created once the value arrived
+        if (COPIED_TYPES.stream().anyMatch(copiedType -> copiedType.isAssignableFrom(returnType))) {
+            return null;
+        }
+        if (mirroredSubtypes.computeIfAbsent(returnType, type -> classNames.keySet().stream().anyMatch(other -> other != type && type.isAssignableFrom(other)))) {
+            return null;
+        }
+        String descriptor = Arrays.stream(method.getParameterTypes()).map(Class::descriptorString).collect(Collectors.joining("", "(", ")")) + returnType.descriptorString();
+        if (!notNullMethods.contains(method.getDeclaringClass().getName() + "#" + method.getName() + descriptor)) {
+            return null;
+        }
+        ClassName mirror = classNames.get(returnType);
+        return mirror.peerClass(mirror.simpleName() + "Impl");
     }
 
     private Method[] findNecessaryMethods(Class<?> clazz) {
@@ -384,7 +538,9 @@ public class CodeGenerator {
             if (!java.lang.reflect.Modifier.isPublic(field.getModifiers())) {
                 continue;
             }
-            if (java.lang.reflect.Modifier.isFinal(field.getModifiers())) {
+            // Instance fields are filled after construction, constants without a placeholder once they were fetched
+            if (java.lang.reflect.Modifier.isFinal(field.getModifiers()) && java.lang.reflect.Modifier.isStatic(field.getModifiers())
+                    && (field.getType().isPrimitive() || getPlaceholderType(field) != null)) {
                 fieldSpec.addModifiers(Modifier.FINAL);
             }
             if (field.isEnumConstant()) {
@@ -404,15 +560,35 @@ public class CodeGenerator {
             fieldSpec.addAnnotations(Util.getAnnotationTypeNames(field, classNames).stream().map(ClassName::bestGuess).map(AnnotationSpec::builder).map(AnnotationSpec.Builder::build).toList());
             if (java.lang.reflect.Modifier.isFinal(field.getModifiers()) && java.lang.reflect.Modifier.isStatic(field.getModifiers())) {
                 ClassName mirrorHandler = ClassName.get("org.mockbukkit.integrationtester.testclient", "MirrorHandler");
-                fieldSpec.initializer(CodeBlock.builder()
-                        .addStatement("$T.handleStaticField($S, $S)", mirrorHandler, field.getName(), clazz)
-                        .build());
+                ClassName placeholderType = getPlaceholderType(field);
+                if (placeholderType == null) {
+                    fieldSpec.initializer(CodeBlock.of("$T.handleStaticField($L)", mirrorHandler, getMemberId(field)));
+                } else {
+                    fieldSpec.initializer(CodeBlock.of("$T.handleStaticField($L, $T.class)", mirrorHandler, getMemberId(field), placeholderType));
+                }
+                staticFieldIds.add(getMemberId(field));
             }
             fields.add(fieldSpec.build());
         }
         return fields;
     }
 
+    /**
+     * The mirror standing in for a static constant initialized before it was fetched, see StaticFields in the test
+     * client. Null if the type has none that could be created
+     */
+    private @Nullable ClassName getPlaceholderType(Field field) {
+        Class<?> type = field.getType();
+        ClassName mirror = classNames.get(type);
+        if (mirror == null || type.isEnum() || type.isAnnotation() || COPIED_TYPES.stream().anyMatch(copiedType -> copiedType.isAssignableFrom(type))) {
+            return null;
+        }
+        if (type.isInterface()) {
+            return mirror.peerClass(mirror.simpleName() + "Impl");
+        }
+        return java.lang.reflect.Modifier.isAbstract(type.getModifiers()) ? null : mirror;
+    }
+
     private boolean isMethodBanned(Method method, Class<?> classToReplicate) {
         if (classToReplicate.isInterface()) {
             // Handled anyhow
@@ -3,6 +3,7 @@ package org.mockbukkit.integrationtester.codegen;
 import com.google.common.base.Objects;
 import com.palantir.javapoet.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.lang.model.element.Modifier;
 import java.lang.reflect.Method;
@@ -23,8 +24,10 @@ public class MethodData {
     private final boolean isDefault;
     private final boolean isPublic;
     private final boolean varArgs;
+    private final @Nullable ClassName pipelinedResultType;
+    private final @Nullable String resultStability;
 
-    private MethodData(String methodName, ParameterData[] parameterData, TypeName methodReturnType, String[] methodAnnotations, TypeVariableName[] methodGenerics, boolean isStatic, boolean isAbstract, boolean isDefault, boolean isPublic, boolean varArgs) {
+    private MethodData(String methodName, ParameterData[] parameterData, TypeName methodReturnType, String[] methodAnnotations, TypeVariableName[] methodGenerics, boolean isStatic, boolean isAbstract, boolean isDefault, boolean isPublic, boolean varArgs, @Nullable ClassName pipelinedResultType, @Nullable String resultStability) {
         this.methodName = methodName;
         this.parameterData = parameterData;
         this.methodReturnType = methodReturnType;
@@ -35,9 +38,17 @@ public class MethodData {
         this.isDefault = isDefault;
         this.isPublic = isPublic;
         this.varArgs = varArgs;
+        this.pipelinedResultType = pipelinedResultType;
+        this.resultStability = resultStability;
     }
 
-    public static MethodData from(Method method, Map<Class<?>, ClassName> classNames, boolean isImplementation, boolean isEnum, Map<String, String> typeConversions) {
+    /**
+     * @param pipelinedResultType The mirror implementation to stand in for the result without waiting for it, only for
+     *                            results that are never null
+     * @param resultStability     The ResultStability constant for results the client may cache, see
+     *                            {@link ResultStabilityRules}
+     */
+    public static MethodData from(Method method, Map<Class<?>, ClassName> classNames, boolean isImplementation, boolean isEnum, Map<String, String> typeConversions, @Nullable ClassName pipelinedResultType, @Nullable String resultStability) {
         List<TypeVariableName> methodGenerics = new ArrayList<>();
         for (@NotNull TypeVariable<Method> typeParameter : method.getTypeParameters()) {
             methodGenerics.add(Util.getTypeVariableName(typeParameter, classNames, typeConversions));
@@ -52,11 +63,13 @@ public class MethodData {
                 java.lang.reflect.Modifier.isAbstract(method.getModifiers()) && !isImplementation && !isEnum,
                 method.isDefault(),
                 java.lang.reflect.Modifier.isPublic(method.getModifiers()),
-                method.isVarArgs()
+                method.isVarArgs(),
+                pipelinedResultType,
+                resultStability
         );
     }
 
-    public MethodSpec toMethodSpec(Class<?> clazz) {
+    public MethodSpec toMethodSpec(int memberId) {
         MethodSpec.Builder methodSpec = MethodSpec.methodBuilder(methodName)
                 .addAnnotations(Arrays.stream(methodAnnotations).map(name -> AnnotationSpec.builder(ClassName.bestGuess(name)).build()).toList())
                 .addParameters(Arrays.stream(parameterData).map(ParameterData::toParameterSpec).toList())
@@ -66,14 +79,29 @@ public class MethodData {
         }
         if (isStatic) {
             ClassName mirrorHandler = ClassName.get("org.mockbukkit.integrationtester.testclient", "MirrorHandler");
-            methodSpec.addStatement((!methodReturnType.toString().equals("void") ? "return " : "") + "$T.handleStatic($S, $S$L)", mirrorHandler, methodName, clazz, generateParameterString());
+            if (methodReturnType.toString().equals("void")) {
+                methodSpec.addStatement("$T.handleVoid($L, null$L)", mirrorHandler, memberId, generateParameterString());
+            } else if (pipelinedResultType != null) {
+                methodSpec.addStatement("return $T.handlePipelined($L, $T.class, null$L)", mirrorHandler, memberId, pipelinedResultType, generateParameterString());
+            } else {
+                methodSpec.addStatement("return $T.handleStatic($L$L)", mirrorHandler, memberId, generateParameterString());
+            }
             methodSpec.addModifiers(isPublic ? javax.lang.model.element.Modifier.PUBLIC : javax.lang.model.element.Modifier.PROTECTED, javax.lang.model.element.Modifier.STATIC);
         } else if (isAbstract && !isDefault) {
             methodSpec.addModifiers(isPublic ? javax.lang.model.element.Modifier.PUBLIC : javax.lang.model.element.Modifier.PROTECTED, javax.lang.model.element.Modifier.ABSTRACT);
         } else {
             methodSpec.addModifiers(isPublic ? javax.lang.model.element.Modifier.PUBLIC : javax.lang.model.element.Modifier.PROTECTED);
             ClassName mirrorHandler = ClassName.get("org.mockbukkit.integrationtester.testclient", "MirrorHandler");
-            methodSpec.addStatement((!methodReturnType.toString().equals("void") ? "return " : "") + "$T.handle($S, $S, this$L)", mirrorHandler, methodName, clazz, generateParameterString());
+            if (methodReturnType.toString().equals("void")) {
+                methodSpec.addStatement("$T.handleVoid($L, this$L)", mirrorHandler, memberId, generateParameterString());
+            } else if (pipelinedResultType != null) {
+                methodSpec.addStatement("return $T.handlePipelined($L, $T.class, this$L)", mirrorHandler, memberId, pipelinedResultType, generateParameterString());
+            } else if (resultStability != null) {
+                ClassName stability = ClassName.get("org.mockbukkit.integrationtester.testclient", "ResultStability");
+                methodSpec.addStatement("return $T.handleCached($L, $T.$L, this$L)", mirrorHandler, memberId, stability, resultStability, generateParameterString());
+            } else {
+                methodSpec.addStatement("return $T.handle($L, this$L)", mirrorHandler, memberId, generateParameterString());
+            }
         }
         if (isDefault) {
             methodSpec.addModifiers(Modifier.DEFAULT);
@@ -0,0 +1,90 @@
+package org.mockbukkit.integrationtester.codegen;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Decides which mirror methods can have their results cached on the client, see ResultStability in the test client.
+ * Only the curated rules in {@link #RESOURCE} make results tick stable, a getter polled until the server changes its
+ * result would never see the change otherwise. Beyond those, parameterless methods of enums and records returning
+ * values that can not be changed from the client are immutable
+ */
+public class ResultStabilityRules {
+
+    public static final String RESOURCE = "/resultStability.json";
+    private static final Set<Class<?>> VALUE_TYPES = Set.of(String.class, UUID.class, Boolean.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class, Character.class);
+
+    // Keyed by declaring class and method name, the name of a ResultStability constant as value
+    private final Map<String, String> rules;
+
+    public ResultStabilityRules(Map<String, String> rules) {
+        this.rules = rules;
+    }
+
+    public static ResultStabilityRules load() {
+        try (InputStream inputStream = ResultStabilityRules.class.getResourceAsStream(RESOURCE)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing " + RESOURCE);
+            }
+            try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+                JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+                Map<String, String> rules = new HashMap<>();
+                addRules(json, "immutable", "IMMUTABLE", rules);
+                addRules(json, "tickStable", "TICK_STABLE", rules);
+                addRules(json, "volatile", "VOLATILE", rules);
+                return new ResultStabilityRules(rules);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void addRules(JsonObject json, String category, String stability, Map<String, String> rules) {
+        if (!json.has(category)) {
+            return;
+        }
+        for (JsonElement element : json.getAsJsonArray(category)) {
+            rules.put(element.getAsString(), stability);
+        }
+    }
+
+    /**
+     * @param isMirrored Whether a type is mirrored, results of mirrored interfaces are references the client can not
+     *                   change, unlike mirrored classes
+     * @return The name of the ResultStability constant, or null if the result must never be cached
+     */
+    public @Nullable String classify(Method method, Predicate<Class<?>> isMirrored) {
+        // The cache is keyed by method only
+        if (method.getParameterCount() != 0 || method.getReturnType() == void.class || Modifier.isStatic(method.getModifiers())) {
+            return null;
+        }
+        String rule = rules.get(method.getDeclaringClass().getName() + "#" + method.getName());
+        if (rule != null) {
+            return rule.equals("VOLATILE") ? null : rule;
+        }
+        Class<?> returnType = method.getReturnType();
+        boolean cacheableResult = returnType.isPrimitive() || returnType.isEnum() || VALUE_TYPES.contains(returnType)
+                || (returnType.isInterface() && isMirrored.test(returnType));
+        if (!cacheableResult || method.getGenericReturnType() != returnType) {
+            return null;
+        }
+        Class<?> owner = method.getDeclaringClass();
+        return owner.isEnum() || owner.isRecord() ? "IMMUTABLE" : null;
+    }
+}
@@ -152,4 +152,23 @@ public class Util {
         return output;
     }
 
+    /**
+     * The signature the server resolves a member id with, see MemberTable in core
+     */
+    public static String getMemberSignature(Member member) {
+        StringBuilder stringBuilder = new StringBuilder(member.getDeclaringClass().getName()).append('#');
+        if (member instanceof Field) {
+            return stringBuilder.append(member.getName()).toString();
+        }
+        stringBuilder.append(member instanceof Constructor<?> ? "<init>" : member.getName()).append('(');
+        Class<?>[] parameterTypes = ((Executable) member).getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                stringBuilder.append(',');
+            }
+            stringBuilder.append(parameterTypes[i].getName());
+        }
+        return stringBuilder.append(')').toString();
+    }
+
 }
@@ -14,6 +14,7 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter")
     implementation("com.google.guava:guava:33.4.0-jre")
     implementation("com.google.code.gson:gson:2.11.0")
+    compileOnly("org.jetbrains:annotations:26.0.2")
 }
 
 tasks.test {
@@ -0,0 +1,67 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values already written or read within the current packet, so a repeated value is encoded once and referenced by
+ * index afterwards. Containers are added before their elements, which also makes self references terminate. Each
+ * packet clears the tables of its registry when it starts encoding or decoding
+ */
+public class BackReferences {
+
+    private final Map<Object, Integer> identities = new IdentityHashMap<>();
+    // Equal strings share an index, everything else is compared by identity
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<Object> values = new ArrayList<>();
+
+    /**
+     * @return The index of the value, or -1 if it was not written in this packet yet
+     */
+    public int indexOf(Object value) {
+        Integer index = value instanceof String string ? strings.get(string) : identities.get(value);
+        return index == null ? -1 : index;
+    }
+
+    public void add(Object value) {
+        if (value instanceof String string) {
+            strings.put(string, values.size());
+        } else {
+            identities.put(value, values.size());
+        }
+        values.add(value);
+    }
+
+    /**
+     * Take the next index for a value that can only be created after its components were read, see {@link #set}
+     */
+    public int reserve() {
+        values.add(null);
+        return values.size() - 1;
+    }
+
+    public void set(int index, Object value) {
+        if (value instanceof String string) {
+            strings.put(string, index);
+        } else {
+            identities.put(value, index);
+        }
+        values.set(index, value);
+    }
+
+    public Object get(int index) {
+        if (index >= values.size()) {
+            throw new IllegalStateException("Unknown back reference " + index);
+        }
+        return values.get(index);
+    }
+
+    public void clear() {
+        identities.clear();
+        strings.clear();
+        values.clear();
+    }
+}
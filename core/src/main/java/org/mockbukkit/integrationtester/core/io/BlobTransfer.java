@@ -0,0 +1,102 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import com.google.common.collect.MapMaker;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Large byte arrays and strings, as well as files marked for {@link #upload}, are not encoded into a frame. While a
+ * packet is encoded they are queued here and {@link PacketConnection} streams them in chunks right before the frame
+ * that refers to them. The receiving side keeps them until that frame is decoded
+ */
+public class BlobTransfer {
+
+    public static final int THRESHOLD = Integer.getInteger("paperintegrationtester.blobThreshold", 64 * 1024);
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    // Only touched while encoding, under the write lock of the connection
+    private final Queue<Blob> outgoing = new ArrayDeque<>();
+    private int nextId;
+    // Filled by the reading thread, taken by whichever thread decodes
+    private final Map<Integer, Object> received = new ConcurrentHashMap<>();
+    // By identity, a file is only uploaded when asked for, not whenever one is sent
+    private final Set<Object> uploads = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+
+    public boolean isBlob(Object object) {
+        if (object instanceof byte[] bytes) {
+            return bytes.length >= THRESHOLD;
+        }
+        if (object instanceof String string) {
+            return string.length() >= THRESHOLD;
+        }
+        return (object instanceof File || object instanceof Path) && uploads.contains(object);
+    }
+
+    /**
+     * Send the content of the file along whenever this object is sent, the other side receives a copy of it in a
+     * temporary directory instead
+     *
+     * @param file A {@link File} or {@link Path} of a regular file
+     * @return The file
+     */
+    public <T> T upload(T file) {
+        boolean regularFile = file instanceof File ioFile ? ioFile.isFile() : file instanceof Path path && Files.isRegularFile(path);
+        if (!regularFile) {
+            throw new IllegalArgumentException("Only regular files can be uploaded: " + file);
+        }
+        uploads.add(file);
+        return file;
+    }
+
+    /**
+     * @return The id the receiving side can take the value with
+     */
+    public int queue(Object value) {
+        int id = nextId++;
+        outgoing.add(new Blob(id, value));
+        return id;
+    }
+
+    Blob pollOutgoing() {
+        return outgoing.poll();
+    }
+
+    /**
+     * Drop queued blobs of a packet that could not be encoded after all
+     */
+    void discardOutgoing() {
+        outgoing.clear();
+    }
+
+    void put(int id, Object value) {
+        received.put(id, value);
+    }
+
+    /**
+     * Drop blobs of a frame that were not taken while decoding it
+     */
+    void discardReceived(int[] ids) {
+        for (int id : ids) {
+            received.remove(id);
+        }
+    }
+
+    public Object take(int id) {
+        Object value = received.remove(id);
+        if (value == null) {
+            throw new IllegalStateException("Unknown blob " + id);
+        }
+        return value;
+    }
+
+    record Blob(int id, Object value) {
+    }
+}
@@ -0,0 +1,54 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Heap buffers reused for encoding and decoding frames, so steady traffic does not allocate a new array per packet
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    // Buffers for huge frames are left to the garbage collector instead of being kept around
+    private static final int MAX_POOLED_CAPACITY = 1 << 20;
+    private static final int MAX_POOLED = 64;
+
+    // Last in, first out, the most recently used buffer is the most likely to still be in a cache
+    private static final Deque<ByteBuffer> buffers = new ConcurrentLinkedDeque<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private BufferPool() {
+    }
+
+    /**
+     * @return A cleared buffer with at least the given capacity, give it back with {@link #release(ByteBuffer)}
+     */
+    public static ByteBuffer acquire(int capacity) {
+        ByteBuffer buffer = buffers.pollFirst();
+        if (buffer == null) {
+            return ByteBuffer.allocate(Math.max(capacity, DEFAULT_CAPACITY));
+        }
+        pooled.decrementAndGet();
+        if (buffer.capacity() < capacity) {
+            release(buffer);
+            return ByteBuffer.allocate(capacity);
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * The buffer must not be used anymore after it was released
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer.capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        if (pooled.incrementAndGet() > MAX_POOLED) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.addFirst(buffer);
+    }
+}
@@ -0,0 +1,50 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes into a pooled buffer that is swapped for a larger one when it runs full. Closing does nothing, so a
+ * {@link java.io.DataOutputStream} on top of it can be closed and kept
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private ByteBuffer buffer = BufferPool.acquire(BufferPool.DEFAULT_CAPACITY);
+
+    @Override
+    public void write(int b) {
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureRemaining(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    private void ensureRemaining(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        ByteBuffer larger = BufferPool.acquire(Math.max(buffer.capacity() * 2, buffer.position() + length));
+        larger.put(buffer.flip());
+        BufferPool.release(buffer);
+        this.buffer = larger;
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * @return The underlying buffer, its position is the number of bytes written
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public void reset() {
+        buffer.clear();
+    }
+}
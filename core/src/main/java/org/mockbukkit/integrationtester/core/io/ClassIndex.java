@@ -0,0 +1,168 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The mirror class of every mirrored server class, generated together with them. {@link #RESOURCE} starts with the
+ * number of classes, followed by the {@link String#hashCode()} of each server class name and the offset of its entry,
+ * sorted by hash. The entries after that hold the server and the mirror class name. It is read in one go, an entry is
+ * only decoded and its mirror class only loaded once the server class name is looked up
+ */
+public class ClassIndex {
+
+    public static final String RESOURCE = "/classRemapping.bin";
+    private static final int SLOT_SIZE = 2 * Integer.BYTES;
+
+    private final byte[] data;
+    private final ByteBuffer table;
+    private final int size;
+    // Empty for server classes without a mirror
+    private final Map<String, Optional<Class<?>>> resolved = new ConcurrentHashMap<>();
+
+    public ClassIndex(byte[] data) {
+        this.data = data;
+        this.table = ByteBuffer.wrap(data);
+        this.size = table.getInt(0);
+    }
+
+    public static ClassIndex load() {
+        try (InputStream inputStream = ClassIndex.class.getResourceAsStream(RESOURCE)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing " + RESOURCE + ", run the code generator");
+            }
+            return new ClassIndex(inputStream.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param remapping The names of the mirror classes by the names of the server classes
+     */
+    public static void write(Map<String, String> remapping, OutputStream outputStream) throws IOException {
+        String[] names = remapping.keySet().toArray(String[]::new);
+        Arrays.sort(names, Comparator.comparingInt(String::hashCode));
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream entryOutput = new DataOutputStream(entries);
+        int entriesStart = Integer.BYTES + names.length * SLOT_SIZE;
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(names.length);
+        for (String name : names) {
+            dataOutputStream.writeInt(name.hashCode());
+            dataOutputStream.writeInt(entriesStart + entryOutput.size());
+            entryOutput.writeUTF(name);
+            entryOutput.writeUTF(remapping.get(name));
+        }
+        entries.writeTo(dataOutputStream);
+        dataOutputStream.flush();
+    }
+
+    /**
+     * @return The mirror class, or null if the server class is not mirrored
+     */
+    public @Nullable Class<?> getMirrorClass(String serverClassName) {
+        Optional<Class<?>> mirrorClass = resolved.get(serverClassName);
+        if (mirrorClass == null) {
+            mirrorClass = Optional.ofNullable(resolve(serverClassName));
+            resolved.put(serverClassName, mirrorClass);
+        }
+        return mirrorClass.orElse(null);
+    }
+
+    private @Nullable Class<?> resolve(String serverClassName) {
+        String mirrorClassName = getMirrorClassName(serverClassName);
+        if (mirrorClassName == null) {
+            return null;
+        }
+        try {
+            // Not initialized, its static constants could only be resolved once they were fetched, see StaticFields
+            return Class.forName(mirrorClassName, false, ClassIndex.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The name of the mirror class, or null if the server class is not mirrored
+     */
+    public @Nullable String getMirrorClassName(String serverClassName) {
+        int hash = serverClassName.hashCode();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleHash = getHash(middle);
+            if (middleHash < hash) {
+                low = middle + 1;
+            } else if (middleHash > hash) {
+                high = middle - 1;
+            } else {
+                return findEntry(middle, serverClassName);
+            }
+        }
+        return null;
+    }
+
+    private @Nullable String findEntry(int slot, String serverClassName) {
+        int hash = getHash(slot);
+        while (slot > 0 && getHash(slot - 1) == hash) {
+            slot--;
+        }
+        // Names with the same hash are next to each other
+        for (; slot < size && getHash(slot) == hash; slot++) {
+            try {
+                DataInputStream entry = readEntry(slot);
+                if (entry.readUTF().equals(serverClassName)) {
+                    return entry.readUTF();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Load every mirror class without initializing it, so resolving them later is cheap. Meant for the background, a
+     * class that can not be loaded fails once it is looked up instead
+     */
+    public void preloadClasses() {
+        for (int slot = 0; slot < size; slot++) {
+            try {
+                DataInputStream entry = readEntry(slot);
+                entry.readUTF();
+                Class.forName(entry.readUTF(), false, ClassIndex.class.getClassLoader());
+            } catch (ClassNotFoundException | LinkageError ignored) {
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private int getHash(int slot) {
+        return table.getInt(Integer.BYTES + slot * SLOT_SIZE);
+    }
+
+    private DataInputStream readEntry(int slot) {
+        int offset = table.getInt(Integer.BYTES + slot * SLOT_SIZE + Integer.BYTES);
+        return new DataInputStream(new ByteArrayInputStream(data, offset, data.length - offset));
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,18 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.mockbukkit.integrationtester.core.util.ValueCodec;
+
+/**
+ * Returned instead of a large collection once remote collections are enabled with a {@link RemoteCollectionsPacket}.
+ * The server keeps a snapshot of the elements registered under the id, the client fetches the rest of them with
+ * {@link PageCall} and releases the id like that of any other object
+ *
+ * @param set       Whether the collection was a set, otherwise it is treated as a list
+ * @param firstPage The first elements, as many as there are in a page
+ */
+public record CollectionCursor(long id, int size, boolean set, Object[] firstPage) {
+
+    public static final ValueCodec<CollectionCursor> CODEC = ValueCodec.of(CollectionCursor.class,
+            cursor -> new Object[]{cursor.id(), cursor.size(), cursor.set(), cursor.firstPage()},
+            components -> new CollectionCursor((long) components[0], (int) components[1], (boolean) components[2], (Object[]) components[3]));
+}
@@ -2,21 +2,34 @@ package org.mockbukkit.integrationtester.core.io;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.jetbrains.annotations.Nullable;
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
 import org.mockbukkit.integrationtester.core.util.ObjectUtil;
 
-import javax.annotation.Nullable;
 import java.io.*;
 
-public record FieldFetchCall(String className, @Nullable Object owner, String field) implements Packet {
+/**
+ * @param fieldId The id of the field in the {@link MemberTable}
+ */
+public record FieldFetchCall(int fieldId, @Nullable Object owner) implements Packet {
 
     public static final short ID = 0;
 
     public void send(OutputStream outputStream, ObjectRegistry registry) {
-        try (DataOutputStream dataOutputStream = new DataOutputStream(outputStream)) {
+        send(outputStream, registry, PacketFactory.getFormat());
+    }
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            registry.getSentReferences().clear();
             dataOutputStream.writeShort(ID);
+            if (format == PacketFormat.BINARY) {
+                BinaryObjectUtil.writeVarInt(dataOutputStream, fieldId);
+                BinaryObjectUtil.writeObject(dataOutputStream, owner, registry);
+                return;
+            }
             JsonObject jsonObject = new JsonObject();
-            jsonObject.addProperty("field", field);
-            jsonObject.addProperty("class", className);
+            jsonObject.addProperty("field", fieldId);
             if (owner != null) {
                 jsonObject.add("owner", ObjectUtil.serializeData(owner, registry));
             }
@@ -27,9 +40,18 @@ public record FieldFetchCall(String className, @Nullable Object owner, String fi
     }
 
     public static FieldFetchCall receive(InputStream inputStream, ObjectRegistry registry) {
-        try (DataInputStream dataInputStream = new DataInputStream(inputStream)) {
+        return receive(inputStream, registry, PacketFactory.getFormat());
+    }
+
+    public static FieldFetchCall receive(InputStream inputStream, ObjectRegistry registry, PacketFormat format) {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            registry.getReceivedReferences().clear();
+            if (format == PacketFormat.BINARY) {
+                int fieldId = BinaryObjectUtil.readVarInt(dataInputStream);
+                return new FieldFetchCall(fieldId, BinaryObjectUtil.readObject(dataInputStream, registry));
+            }
             JsonObject jsonObject = JsonParser.parseString(dataInputStream.readUTF()).getAsJsonObject();
-            return new FieldFetchCall(jsonObject.get("class").getAsString(), jsonObject.has("owner") ? ObjectUtil.readObject(jsonObject.get("owner"), registry) : null, jsonObject.get("field").getAsString());
+            return new FieldFetchCall(jsonObject.get("field").getAsInt(), jsonObject.has("owner") ? ObjectUtil.readObject(jsonObject.get("owner"), registry) : null);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
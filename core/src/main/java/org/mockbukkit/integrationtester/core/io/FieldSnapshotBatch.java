@@ -0,0 +1,36 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
+
+import java.io.*;
+
+/**
+ * Snapshots of several owners fetched at once. Answered by a {@link MethodReturnCall} with an array holding the values
+ * of each snapshot, in the same order
+ */
+public record FieldSnapshotBatch(FieldSnapshotCall... snapshots) implements Packet {
+
+    public static final short ID = 12;
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            registry.getSentReferences().clear();
+            dataOutputStream.writeShort(ID);
+            BinaryObjectUtil.writeVarInt(dataOutputStream, snapshots.length);
+            for (FieldSnapshotCall snapshot : snapshots) {
+                snapshot.write(dataOutputStream, registry, format);
+            }
+        }
+    }
+
+    public static FieldSnapshotBatch receive(InputStream inputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            registry.getReceivedReferences().clear();
+            FieldSnapshotCall[] snapshots = new FieldSnapshotCall[BinaryObjectUtil.readVarInt(dataInputStream)];
+            for (int i = 0; i < snapshots.length; i++) {
+                snapshots[i] = FieldSnapshotCall.read(dataInputStream, registry, format);
+            }
+            return new FieldSnapshotBatch(snapshots);
+        }
+    }
+}
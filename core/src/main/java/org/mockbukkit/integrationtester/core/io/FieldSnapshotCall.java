@@ -0,0 +1,80 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.Nullable;
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
+import org.mockbukkit.integrationtester.core.util.ObjectUtil;
+
+import java.io.*;
+
+/**
+ * Fetches several fields of the same owner at once, answered by a {@link MethodReturnCall} with an array of the values
+ * in the same order
+ *
+ * @param fieldIds The ids of the fields in the {@link MemberTable}
+ */
+public record FieldSnapshotCall(int[] fieldIds, @Nullable Object owner) implements Packet {
+
+    public static final short ID = 9;
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            registry.getSentReferences().clear();
+            dataOutputStream.writeShort(ID);
+            write(dataOutputStream, registry, format);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void write(DataOutputStream dataOutputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        if (format == PacketFormat.BINARY) {
+            BinaryObjectUtil.writeVarInt(dataOutputStream, fieldIds.length);
+            for (int fieldId : fieldIds) {
+                BinaryObjectUtil.writeVarInt(dataOutputStream, fieldId);
+            }
+            BinaryObjectUtil.writeObject(dataOutputStream, owner, registry);
+            return;
+        }
+        JsonObject jsonObject = new JsonObject();
+        JsonArray fields = new JsonArray();
+        for (int fieldId : fieldIds) {
+            fields.add(fieldId);
+        }
+        jsonObject.add("fields", fields);
+        if (owner != null) {
+            jsonObject.add("owner", ObjectUtil.serializeData(owner, registry));
+        }
+        dataOutputStream.writeUTF(jsonObject.toString());
+    }
+
+    public static FieldSnapshotCall receive(InputStream inputStream, ObjectRegistry registry, PacketFormat format) {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            registry.getReceivedReferences().clear();
+            return read(dataInputStream, registry, format);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static FieldSnapshotCall read(DataInputStream dataInputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        if (format == PacketFormat.BINARY) {
+            int[] fieldIds = new int[BinaryObjectUtil.readVarInt(dataInputStream)];
+            for (int i = 0; i < fieldIds.length; i++) {
+                fieldIds[i] = BinaryObjectUtil.readVarInt(dataInputStream);
+            }
+            return new FieldSnapshotCall(fieldIds, BinaryObjectUtil.readObject(dataInputStream, registry));
+        }
+        JsonObject jsonObject = JsonParser.parseString(dataInputStream.readUTF()).getAsJsonObject();
+        JsonArray fields = jsonObject.getAsJsonArray("fields");
+        int[] fieldIds = new int[fields.size()];
+        int i = 0;
+        for (JsonElement field : fields) {
+            fieldIds[i++] = field.getAsInt();
+        }
+        return new FieldSnapshotCall(fieldIds, jsonObject.has("owner") ? ObjectUtil.readObject(jsonObject.get("owner"), registry) : null);
+    }
+}
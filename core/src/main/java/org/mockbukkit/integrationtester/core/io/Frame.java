@@ -0,0 +1,16 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @param payload A pooled buffer holding the encoded packet, released once the frame is decoded
+ * @param blobIds The blobs sent ahead of the frame, dropped once it is decoded even if it could not be
+ */
+public record Frame(int requestId, ByteBuffer payload, int[] blobIds) {
+
+    private static final int[] NO_BLOBS = new int[0];
+
+    public Frame(int requestId, ByteBuffer payload) {
+        this(requestId, payload, NO_BLOBS);
+    }
+}
@@ -0,0 +1,36 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
+
+import java.io.*;
+
+/**
+ * Pushed by the server under {@link PacketConnection#PUSH_REQUEST_ID} for registered objects it got rid of, like removed
+ * entities or unloaded worlds. Not answered
+ *
+ * @param keys The ids the server has already evicted
+ */
+public record InvalidationPacket(long[] keys) implements Packet {
+
+    public static final short ID = 8;
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            dataOutputStream.writeShort(ID);
+            BinaryObjectUtil.writeVarInt(dataOutputStream, keys.length);
+            for (long key : keys) {
+                BinaryObjectUtil.writeSignedVarLong(dataOutputStream, key);
+            }
+        }
+    }
+
+    public static InvalidationPacket receive(InputStream inputStream) throws IOException {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            long[] keys = new long[BinaryObjectUtil.readVarInt(dataInputStream)];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = BinaryObjectUtil.readSignedVarLong(dataInputStream);
+            }
+            return new InvalidationPacket(keys);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Member;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Numeric ids for every mirrored method, constructor and field, generated together with the mirror classes. The id is
+ * the index of the member signature in {@link #RESOURCE}. Signatures look like {@code org.bukkit.World#getBlockAt(int,int,int)},
+ * {@code org.bukkit.Location#<init>(org.bukkit.World,double,double,double)} or {@code org.bukkit.util.Vector#x} for fields
+ */
+public class MemberTable {
+
+    public static final String RESOURCE = "/memberIds.json";
+    public static final String CONSTRUCTOR_NAME = "<init>";
+    private static final Map<String, Class<?>> PRIMITIVES = Map.of(
+            "boolean", boolean.class, "byte", byte.class, "short", short.class, "int", int.class,
+            "long", long.class, "float", float.class, "double", double.class, "char", char.class
+    );
+
+    private final String[] signatures;
+    private final Member[] members;
+    private Map<String, Integer> ids;
+
+    public MemberTable(String[] signatures) {
+        this.signatures = signatures;
+        this.members = new Member[signatures.length];
+    }
+
+    public static MemberTable load() {
+        try (InputStream inputStream = MemberTable.class.getResourceAsStream(RESOURCE)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing " + RESOURCE + ", run the code generator");
+            }
+            try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+                JsonArray jsonArray = JsonParser.parseReader(reader).getAsJsonArray();
+                String[] signatures = new String[jsonArray.size()];
+                for (int i = 0; i < signatures.length; i++) {
+                    signatures[i] = jsonArray.get(i).getAsString();
+                }
+                return new MemberTable(signatures);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public String getSignature(int id) {
+        if (id < 0 || id >= signatures.length) {
+            return "unknown member #" + id;
+        }
+        return signatures[id];
+    }
+
+    /**
+     * @return The id of the member with the signature, or -1 if it is not mirrored
+     */
+    public synchronized int getId(String signature) {
+        if (ids == null) {
+            ids = new HashMap<>();
+            for (int i = 0; i < signatures.length; i++) {
+                ids.put(signatures[i], i);
+            }
+        }
+        return ids.getOrDefault(signature, -1);
+    }
+
+    /**
+     * Resolve a member, only the first lookup of each id goes through reflection
+     */
+    public Member getMember(int id) throws ReflectiveOperationException {
+        Member member = members[id];
+        if (member == null) {
+            member = resolve(signatures[id]);
+            members[id] = member;
+        }
+        return member;
+    }
+
+    private static Member resolve(String signature) throws ReflectiveOperationException {
+        int ownerEnd = signature.indexOf('#');
+        Class<?> owner = Class.forName(signature.substring(0, ownerEnd));
+        int parametersStart = signature.indexOf('(', ownerEnd);
+        if (parametersStart < 0) {
+            return accessible(owner.getDeclaredField(signature.substring(ownerEnd + 1)));
+        }
+        String name = signature.substring(ownerEnd + 1, parametersStart);
+        String parameterList = signature.substring(parametersStart + 1, signature.length() - 1);
+        String[] parameterNames = parameterList.isEmpty() ? new String[0] : parameterList.split(",");
+        Class<?>[] parameterTypes = new Class<?>[parameterNames.length];
+        for (int i = 0; i < parameterNames.length; i++) {
+            Class<?> primitive = PRIMITIVES.get(parameterNames[i]);
+            parameterTypes[i] = primitive != null ? primitive : Class.forName(parameterNames[i]);
+        }
+        if (name.equals(CONSTRUCTOR_NAME)) {
+            return accessible(owner.getDeclaredConstructor(parameterTypes));
+        }
+        return accessible(owner.getDeclaredMethod(name, parameterTypes));
+    }
+
+    private static <T extends AccessibleObject & Member> T accessible(T member) {
+        // Protected members of abstract classes are mirrored as well
+        if (!Modifier.isPublic(member.getModifiers()) || !Modifier.isPublic(member.getDeclaringClass().getModifiers())) {
+            member.setAccessible(true);
+        }
+        return member;
+    }
+}
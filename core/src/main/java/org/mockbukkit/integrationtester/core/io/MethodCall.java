@@ -3,50 +3,111 @@ package org.mockbukkit.integrationtester.core.io;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
 import org.mockbukkit.integrationtester.core.util.ObjectUtil;
 
 import java.io.*;
 
-public record MethodCall(String methodName, String owner, Object object, Object... parameters) implements Packet{
+/**
+ * @param methodId The id of the method in the {@link MemberTable}
+ * @param resultId An id minted by the client to register the return value under, so later calls can use it before
+ *                 this one has returned. {@link #NO_RESULT_ID} if the return value is sent back instead
+ */
+public record MethodCall(int methodId, long resultId, Object object, Object... parameters) implements Packet{
 
     public static final short ID = 1;
+    public static final long NO_RESULT_ID = 0;
+
+    public MethodCall(int methodId, Object object, Object... parameters) {
+        this(methodId, NO_RESULT_ID, object, parameters);
+    }
 
     public void send(OutputStream outputStream, ObjectRegistry objectRegistry) throws IOException {
-        try (DataOutputStream dataOutputStream = new DataOutputStream(outputStream)) {
+        send(outputStream, objectRegistry, PacketFactory.getFormat());
+    }
+
+    public void send(OutputStream outputStream, ObjectRegistry objectRegistry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            objectRegistry.getSentReferences().clear();
             dataOutputStream.writeShort(ID);
-            JsonObject jsonObject = new JsonObject();
-            jsonObject.addProperty("method", methodName);
-            jsonObject.addProperty("owner", owner);
-            if (object != null) {
-                long objectId = objectRegistry.getKey(object).orElseThrow(() -> new IllegalStateException("Object not found: " + object));
-                jsonObject.addProperty("objectId", objectId);
-            }
-            JsonArray parametersJsom = new JsonArray();
-            for (Object parameter : parameters) {
-                parametersJsom.add(ObjectUtil.serializeData(parameter, objectRegistry));
-            }
-            jsonObject.add("parameters", parametersJsom);
-            String jsonString = jsonObject.toString();
-            dataOutputStream.writeUTF(jsonString);
+            write(dataOutputStream, objectRegistry, format);
+        }
+    }
+
+    void write(DataOutputStream dataOutputStream, ObjectRegistry objectRegistry, PacketFormat format) throws IOException {
+        if (format == PacketFormat.BINARY) {
+            writeBinary(dataOutputStream, objectRegistry);
+            return;
+        }
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("method", methodId);
+        if (resultId != NO_RESULT_ID) {
+            jsonObject.addProperty("resultId", resultId);
+        }
+        if (object != null) {
+            long objectId = objectRegistry.getKey(object).orElseThrow(() -> new IllegalStateException("Object not found: " + object));
+            jsonObject.addProperty("objectId", objectId);
         }
+        JsonArray parametersJsom = new JsonArray();
+        for (Object parameter : parameters) {
+            parametersJsom.add(ObjectUtil.serializeData(parameter, objectRegistry));
+        }
+        jsonObject.add("parameters", parametersJsom);
+        String jsonString = jsonObject.toString();
+        dataOutputStream.writeUTF(jsonString);
+    }
+
+    private void writeBinary(DataOutputStream dataOutputStream, ObjectRegistry objectRegistry) throws IOException {
+        BinaryObjectUtil.writeVarInt(dataOutputStream, methodId);
+        BinaryObjectUtil.writeSignedVarLong(dataOutputStream, resultId);
+        dataOutputStream.writeBoolean(object != null);
+        if (object != null) {
+            long objectId = objectRegistry.getKey(object).orElseThrow(() -> new IllegalStateException("Object not found: " + object));
+            BinaryObjectUtil.writeSignedVarLong(dataOutputStream, objectId);
+        }
+        BinaryObjectUtil.writeArray(dataOutputStream, parameters, objectRegistry);
     }
 
     public static MethodCall receive(InputStream inputStream, ObjectRegistry objectRegistry) throws IOException {
-        try (DataInputStream dataInputStream = new DataInputStream(inputStream)) {
-            String string = dataInputStream.readUTF();
-            JsonObject jsonObject = JsonParser.parseString(string).getAsJsonObject();
-            String methodName = jsonObject.get("method").getAsString();
-            String owner = jsonObject.get("owner").getAsString();
-
-            Object object;
-            if (jsonObject.has("objectId")) {
-                object = objectRegistry.getObject(jsonObject.get("objectId").getAsLong());
-            } else {
-                object = null;
-            }
-            Object[] parametersJsom = ObjectUtil.readArray(jsonObject.get("parameters").getAsJsonArray(), objectRegistry);
-            return new MethodCall(methodName, owner, object, parametersJsom);
+        return receive(inputStream, objectRegistry, PacketFactory.getFormat());
+    }
+
+    public static MethodCall receive(InputStream inputStream, ObjectRegistry objectRegistry, PacketFormat format) throws IOException {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            objectRegistry.getReceivedReferences().clear();
+            return read(dataInputStream, objectRegistry, format);
+        }
+    }
+
+    static MethodCall read(DataInputStream dataInputStream, ObjectRegistry objectRegistry, PacketFormat format) throws IOException {
+        if (format == PacketFormat.BINARY) {
+            return readBinary(dataInputStream, objectRegistry);
+        }
+        String string = dataInputStream.readUTF();
+        JsonObject jsonObject = JsonParser.parseString(string).getAsJsonObject();
+        int methodId = jsonObject.get("method").getAsInt();
+        long resultId = jsonObject.has("resultId") ? jsonObject.get("resultId").getAsLong() : NO_RESULT_ID;
+
+        Object object;
+        if (jsonObject.has("objectId")) {
+            object = objectRegistry.getObject(jsonObject.get("objectId").getAsLong());
+        } else {
+            object = null;
+        }
+        Object[] parametersJsom = ObjectUtil.readArray(jsonObject.get("parameters").getAsJsonArray(), objectRegistry);
+        return new MethodCall(methodId, resultId, object, parametersJsom);
+    }
+
+    private static MethodCall readBinary(DataInputStream dataInputStream, ObjectRegistry objectRegistry) throws IOException {
+        int methodId = BinaryObjectUtil.readVarInt(dataInputStream);
+        long resultId = BinaryObjectUtil.readSignedVarLong(dataInputStream);
+        Object object = null;
+        if (dataInputStream.readBoolean()) {
+            long objectId = BinaryObjectUtil.readSignedVarLong(dataInputStream);
+            object = objectRegistry.resolveReceived(() -> objectRegistry.getObject(objectId));
         }
+        Object[] parameters = BinaryObjectUtil.readArray(dataInputStream, objectRegistry);
+        return new MethodCall(methodId, resultId, object, parameters);
     }
 
 
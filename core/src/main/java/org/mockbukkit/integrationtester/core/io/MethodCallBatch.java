@@ -0,0 +1,36 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
+
+import java.io.*;
+
+/**
+ * Void method calls that are executed in order within the same server tick. Answered by a {@link MethodReturnCall}
+ * once all calls succeeded, or by a {@link MethodExceptionCall} pointing at the first call that failed
+ */
+public record MethodCallBatch(MethodCall... calls) implements Packet {
+
+    public static final short ID = 4;
+
+    public void send(OutputStream outputStream, ObjectRegistry objectRegistry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            objectRegistry.getSentReferences().clear();
+            dataOutputStream.writeShort(ID);
+            BinaryObjectUtil.writeVarInt(dataOutputStream, calls.length);
+            for (MethodCall call : calls) {
+                call.write(dataOutputStream, objectRegistry, format);
+            }
+        }
+    }
+
+    public static MethodCallBatch receive(InputStream inputStream, ObjectRegistry objectRegistry, PacketFormat format) throws IOException {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            objectRegistry.getReceivedReferences().clear();
+            MethodCall[] calls = new MethodCall[BinaryObjectUtil.readVarInt(dataInputStream)];
+            for (int i = 0; i < calls.length; i++) {
+                calls[i] = MethodCall.read(dataInputStream, objectRegistry, format);
+            }
+            return new MethodCallBatch(calls);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
+
+import java.io.*;
+
+/**
+ * @param callIndex The index of the failing call within a {@link MethodCallBatch}, or -1 for single calls
+ */
+public record MethodExceptionCall(String exceptionClass, String message, int callIndex) implements Packet {
+
+    public static final short ID = 3;
+
+    public static MethodExceptionCall from(Throwable throwable) {
+        return from(throwable, -1);
+    }
+
+    public static MethodExceptionCall from(Throwable throwable, int callIndex) {
+        return new MethodExceptionCall(throwable.getClass().getName(), throwable.getMessage() == null ? "" : throwable.getMessage(), callIndex);
+    }
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            dataOutputStream.writeShort(ID);
+            BinaryObjectUtil.writeSymbol(dataOutputStream, exceptionClass, registry.getSentSymbols());
+            BinaryObjectUtil.writeString(dataOutputStream, message);
+            BinaryObjectUtil.writeVarInt(dataOutputStream, callIndex + 1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static MethodExceptionCall receive(InputStream inputStream, ObjectRegistry registry) {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            return new MethodExceptionCall(BinaryObjectUtil.readSymbol(dataInputStream, registry.getReceivedSymbols()), BinaryObjectUtil.readString(dataInputStream), BinaryObjectUtil.readVarInt(dataInputStream) - 1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.mockbukkit.integrationtester.core.io;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
 import org.mockbukkit.integrationtester.core.util.ObjectUtil;
 
 import java.io.*;
@@ -11,8 +12,17 @@ public record MethodReturnCall(Object value) implements Packet {
     public static final short ID = 2;
 
     public void send(OutputStream outputStream, ObjectRegistry objectRegistry) {
-        try (DataOutputStream dataOutputStream = new DataOutputStream(outputStream)) {
+        send(outputStream, objectRegistry, PacketFactory.getFormat());
+    }
+
+    public void send(OutputStream outputStream, ObjectRegistry objectRegistry, PacketFormat format) {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            objectRegistry.getSentReferences().clear();
             dataOutputStream.writeShort(ID);
+            if (format == PacketFormat.BINARY) {
+                BinaryObjectUtil.writeObject(dataOutputStream, value, objectRegistry);
+                return;
+            }
             JsonElement jsonElement = ObjectUtil.serializeData(value, objectRegistry);
             dataOutputStream.writeUTF(jsonElement.toString());
         } catch (IOException e) {
@@ -21,7 +31,15 @@ public record MethodReturnCall(Object value) implements Packet {
     }
 
     public static MethodReturnCall receive(InputStream inputStream, ObjectRegistry objectRegistry) {
-        try (DataInputStream dataInputStream = new DataInputStream(inputStream)) {
+        return receive(inputStream, objectRegistry, PacketFactory.getFormat());
+    }
+
+    public static MethodReturnCall receive(InputStream inputStream, ObjectRegistry objectRegistry, PacketFormat format) {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            objectRegistry.getReceivedReferences().clear();
+            if (format == PacketFormat.BINARY) {
+                return new MethodReturnCall(BinaryObjectUtil.readObject(dataInputStream, objectRegistry));
+            }
             JsonElement jsonElement = JsonParser.parseString(dataInputStream.readUTF());
             return new MethodReturnCall(ObjectUtil.readObject(jsonElement, objectRegistry));
         } catch (IOException e) {
@@ -1,7 +1,24 @@
 package org.mockbukkit.integrationtester.core.io;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mints object ids without locking. The server counts up from 1 and the client down from -1, so the two sides never
+ * hand out the same id and the client can name the result of a call before it has returned
+ */
 public class ObjectManager {
 
-    public static long counter = 0;
+    public static final ObjectManager SERVER = new ObjectManager(1);
+    public static final ObjectManager CLIENT = new ObjectManager(-1);
+
+    private final AtomicLong counter = new AtomicLong();
+    private final long step;
+
+    private ObjectManager(long step) {
+        this.step = step;
+    }
 
+    public long nextId() {
+        return counter.addAndGet(step);
+    }
 }
@@ -1,46 +1,586 @@
 package org.mockbukkit.integrationtester.core.io;
 
+import com.google.common.collect.MapMaker;
+import org.jetbrains.annotations.Nullable;
+import org.mockbukkit.integrationtester.core.util.IdentityLongMap;
+import org.mockbukkit.integrationtester.core.util.LongObjectMap;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * The objects both sides know by id. Reads can happen from any number of threads at once.
+ * <p>
+ * Objects are reference counted across the connection: the side owning an object counts how often it sent its id,
+ * the side mirroring it counts how often it received the id. Once a weakly held mirror is collected, its id is
+ * released together with the received count, and the owner only forgets the object when all sent references have been
+ * released. An id sent again while its release is under way thereby stays valid.
+ * <p>
+ * Objects are registered in the innermost open scope. Closing a scope forgets everything registered in it at once,
+ * both sides open and close scopes in the same order through {@link ScopePacket}
+ */
 public class ObjectRegistry {
 
-    private final BiMap<Long, Object> objects = HashBiMap.create();
-    private final Map<String, Class<?>> classRemapping;
+    // Out of reach for the id counters of either side
+    private static final long NO_KEY = Long.MIN_VALUE;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final boolean weak;
+    // The root scope first, lookups go from the innermost scope outwards
+    private final List<Scope> scopes = new ArrayList<>();
+    // Weak as well, by identity
+    private final Set<Object> invalidated = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Mirror classes by the names of the classes of the other side
+    private final Function<String, Class<?>> classRemapping;
+    private final SymbolTable sentSymbols = new SymbolTable();
+    private final SymbolTable receivedSymbols = new SymbolTable();
+    private final BlobTransfer blobs = new BlobTransfer();
+    private final BackReferences sentReferences = new BackReferences();
+    private final BackReferences receivedReferences = new BackReferences();
+    private long[] releasedKeys = new long[16];
+    private int[] releasedReferences = new int[16];
+    private int releasedCount = 0;
+    // Counted by referenceSent since the packet being encoded started, taken back if it can not be sent after all
+    private long[] sentKeys = new long[16];
+    private int sentCount = 0;
+    // The first id or class of the packet being decoded that could not be resolved
+    private @Nullable RuntimeException decodeFailure;
+    // Set on the side owning the objects, see registerWhenSent
+    private @Nullable ObjectManager sentIds;
+    private BiConsumer<Long, Object> sentListener = (key, object) -> {
+    };
 
     public ObjectRegistry(Map<String, Class<?>> stringClassMap) {
+        this(stringClassMap, false);
+    }
+
+    /**
+     * @param weak Whether to only hold objects weakly and queue the ids of collected ones for release, for the side
+     *             that mirrors the objects of the other side
+     */
+    public ObjectRegistry(Map<String, Class<?>> stringClassMap, boolean weak) {
+        this(stringClassMap::get, weak);
+    }
+
+    /**
+     * @param classIndex Only looked up once an object of a class is first received
+     */
+    public ObjectRegistry(ClassIndex classIndex, boolean weak) {
+        this(classIndex::getMirrorClass, weak);
+    }
+
+    private ObjectRegistry(Function<String, Class<?>> classRemapping, boolean weak) {
         this.classRemapping = classRemapping;
+        this.weak = weak;
+        scopes.add(new Scope());
     }
 
     public <T> T getObject(long key) {
-        T object = (T) objects.get(key);
-        if (object != null) {
-            return object;
+        lock.readLock().lock();
+        try {
+            Entry entry = findEntry(key);
+            T object = entry == null ? null : (T) entry.get();
+            if (object != null) {
+                return object;
+            }
+        } finally {
+            lock.readLock().unlock();
         }
         throw new IllegalStateException("Unable to find object with key " + key);
     }
 
     public boolean hasKey(long key) {
-        return objects.containsKey(key);
+        lock.readLock().lock();
+        try {
+            Entry entry = findEntry(key);
+            return entry != null && entry.get() != null;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public Optional<Long> getKey(Object object) {
-        return Optional.ofNullable(objects.inverse().get(object));
+        lock.readLock().lock();
+        try {
+            long key = findKey(object);
+            return key == NO_KEY ? Optional.empty() : Optional.of(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long findKey(Object object) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            long key = scopes.get(i).getKey(object);
+            if (key != NO_KEY) {
+                return key;
+            }
+        }
+        return NO_KEY;
+    }
+
+    /**
+     * Register every object sent without an id from now on, in the innermost scope. For the side owning the objects,
+     * so the elements of collections and arrays and the components of values never have to be registered up front
+     *
+     * @param ids      Mints the ids of objects registered that way
+     * @param listener Told about every object registered that way, outside the lock of the registry
+     */
+    public void registerWhenSent(ObjectManager ids, BiConsumer<Long, Object> listener) {
+        this.sentIds = ids;
+        this.sentListener = listener;
+    }
+
+    /**
+     * @return The id to send the object under. Unless this side {@link #registerWhenSent registers objects when sent},
+     * empty if the object is not registered. Files to {@link BlobTransfer#upload upload} are never registered
+     */
+    public Optional<Long> getSentKey(Object object) {
+        Optional<Long> key = getKey(object);
+        if (key.isPresent() || sentIds == null || blobs.isBlob(object)) {
+            return key;
+        }
+        long id;
+        lock.writeLock().lock();
+        try {
+            // Another thread may have registered it meanwhile
+            id = findKey(object);
+            if (id != NO_KEY) {
+                return Optional.of(id);
+            }
+            id = sentIds.nextId();
+            put(scopes.get(scopes.size() - 1), id, object);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sentListener.accept(id, object);
+        return Optional.of(id);
+    }
+
+    public void putObject(long key, Object object) {
+        lock.writeLock().lock();
+        try {
+            put(scopes.get(scopes.size() - 1), key, object);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Entry put(Scope scope, long key, Object object) {
+        Entry entry = new Entry(key, weak ? new WeakReference<>(object) : object);
+        scope.objects.put(key, entry);
+        if (weak) {
+            scope.weakKeys.putIfAbsent(object, key);
+            CLEANER.register(object, () -> collected(entry));
+        } else {
+            scope.keys.putIfAbsent(object, key);
+        }
+        return entry;
+    }
+
+    private Entry findEntry(long key) {
+        Scope scope = findScope(key);
+        return scope == null ? null : scope.objects.get(key);
+    }
+
+    private Scope findScope(long key) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Scope scope = scopes.get(i);
+            if (scope.objects.containsKey(key)) {
+                return scope;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Count a reference to a registered object that has been sent to the other side
+     */
+    public void referenceSent(long key) {
+        if (weak) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Entry entry = findEntry(key);
+            if (entry != null) {
+                entry.references++;
+                if (sentCount == sentKeys.length) {
+                    sentKeys = Arrays.copyOf(sentKeys, sentCount * 2);
+                }
+                sentKeys[sentCount++] = key;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Start a packet, references counted from now on are taken back by {@link #discardSentReferences()}
+     */
+    public void markSentReferences() {
+        lock.writeLock().lock();
+        try {
+            sentCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Take back the references counted since {@link #markSentReferences()}, the packet could not be encoded after
+     * all. Objects left without references are forgotten, the other side never heard of them
+     */
+    public void discardSentReferences() {
+        lock.writeLock().lock();
+        try {
+            for (int i = sentCount - 1; i >= 0; i--) {
+                release(sentKeys[i], 1);
+            }
+            sentCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Resolve an id received from the other side, counting the reference if this side holds objects weakly
+     *
+     * @param factory Creates the object if the id is unknown, or its object has been collected
+     */
+    public <T> T referenceReceived(long key, Supplier<? extends T> factory) {
+        lock.writeLock().lock();
+        try {
+            Scope scope = findScope(key);
+            Entry entry = scope == null ? null : scope.objects.get(key);
+            T object = entry == null ? null : (T) entry.get();
+            if (object == null) {
+                object = factory.get();
+                Entry collectedEntry = entry;
+                // Stays in the scope it was first received in, the other side registered it there
+                entry = put(scope == null ? scopes.get(scopes.size() - 1) : scope, key, object);
+                if (collectedEntry != null) {
+                    // Not released yet, so the references it received still need releasing
+                    entry.references = collectedEntry.references;
+                }
+            }
+            if (weak) {
+                entry.references++;
+            }
+            return object;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Resolve an id or class of the packet being decoded. A failure is only thrown by {@link #takeDecodeFailure()} once
+     * the whole packet has been read, as the rest of it can still define symbols the other side now takes as known
+     *
+     * @return The resolved object, or null if resolving failed
+     */
+    public <T> @Nullable T resolveReceived(Supplier<? extends T> resolver) {
+        try {
+            return resolver.get();
+        } catch (RuntimeException e) {
+            if (decodeFailure == null) {
+                decodeFailure = e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return The first failure of {@link #resolveReceived} since the last call, or null if there was none
+     */
+    public @Nullable RuntimeException takeDecodeFailure() {
+        RuntimeException failure = decodeFailure;
+        decodeFailure = null;
+        return failure;
+    }
+
+    /**
+     * Drop references the other side no longer holds, the object is forgotten once none are left
+     */
+    public void release(long key, int references) {
+        lock.writeLock().lock();
+        try {
+            Scope scope = findScope(key);
+            if (scope == null) {
+                return;
+            }
+            Entry entry = scope.objects.get(key);
+            entry.references -= references;
+            if (entry.references > 0) {
+                return;
+            }
+            scope.objects.remove(key);
+            Object object = entry.get();
+            if (object != null && scope.keys.get(object, NO_KEY) == key) {
+                scope.keys.remove(object);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void collected(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            // The id may have been received again since, then the new entry took over its references. If its scope
+            // has been closed, the other side has forgotten the object already
+            Scope scope = findScope(entry.key);
+            if (scope == null || scope.objects.get(entry.key) != entry) {
+                return;
+            }
+            scope.objects.remove(entry.key);
+            queueRelease(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void queueRelease(Entry entry) {
+        if (releasedCount == releasedKeys.length) {
+            releasedKeys = Arrays.copyOf(releasedKeys, releasedCount * 2);
+            releasedReferences = Arrays.copyOf(releasedReferences, releasedCount * 2);
+        }
+        releasedKeys[releasedCount] = entry.key;
+        releasedReferences[releasedCount] = entry.references;
+        releasedCount++;
+    }
+
+    /**
+     * Forget an object this side no longer needs without waiting for it to be collected, it is released with the next
+     * {@link #pollReleases()}
+     */
+    public void forget(long key) {
+        lock.writeLock().lock();
+        try {
+            Scope scope = findScope(key);
+            if (scope == null) {
+                return;
+            }
+            Entry entry = scope.objects.remove(key);
+            Object object = entry.get();
+            if (object != null && weak) {
+                scope.weakKeys.remove(object, key);
+            } else if (object != null && scope.keys.get(object, NO_KEY) == key) {
+                scope.keys.remove(object);
+            }
+            queueRelease(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The ids of all objects collected since the last call, for the other side to release
+     */
+    public ReleasePacket pollReleases() {
+        lock.writeLock().lock();
+        try {
+            ReleasePacket packet = new ReleasePacket(Arrays.copyOf(releasedKeys, releasedCount), Arrays.copyOf(releasedReferences, releasedCount));
+            releasedCount = 0;
+            return packet;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forget an object the other side got rid of, right away and regardless of its references. When holding objects
+     * weakly, it is remembered as {@link #isInvalidated(Object) invalidated}
+     */
+    public void invalidate(long key) {
+        lock.writeLock().lock();
+        try {
+            Scope scope = findScope(key);
+            if (scope == null) {
+                return;
+            }
+            Object object = scope.objects.remove(key).get();
+            if (object == null) {
+                return;
+            }
+            if (weak) {
+                scope.weakKeys.remove(object, key);
+                invalidated.add(object);
+            } else if (scope.keys.get(object, NO_KEY) == key) {
+                scope.keys.remove(object);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Whether the object was registered until the other side got rid of it
+     */
+    public boolean isInvalidated(Object object) {
+        return invalidated.contains(object);
+    }
+
+    /**
+     * Register objects in a new scope, nested in the current one, until it is closed
+     */
+    public void openScope() {
+        lock.writeLock().lock();
+        try {
+            scopes.add(new Scope());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forget every object registered since the innermost scope was opened. Only drops the tables of the scope, so it
+     * does not matter how many objects there are
+     */
+    public void closeScope() {
+        lock.writeLock().lock();
+        try {
+            if (scopes.size() == 1) {
+                throw new IllegalStateException("No scope is open");
+            }
+            scopes.remove(scopes.size() - 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return How many scopes are open, not counting the root scope
+     */
+    public int getScopeDepth() {
+        lock.readLock().lock();
+        try {
+            return scopes.size() - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return How many objects are registered, including collected ones not yet released
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int size = 0;
+            for (Scope scope : scopes) {
+                size += scope.objects.size();
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public void putObject(Long key, Object object) {
-        objects.put(key, object);
+    /**
+     * Forget every object, open scopes stay open so they can still be closed in step with the other side
+     */
+    public void forgetAll() {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < scopes.size(); i++) {
+                scopes.set(i, new Scope());
+            }
+            releasedCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
+    /**
+     * Forget every object and close all scopes
+     */
     public void clear() {
-        objects.clear();
+        lock.writeLock().lock();
+        try {
+            scopes.clear();
+            scopes.add(new Scope());
+            releasedCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The class mirroring objects of the class of the other side, or null if there is none
+     */
+    public @Nullable Class<?> getMirrorClass(String className) {
+        return classRemapping.apply(className);
+    }
+
+    public boolean hasObject(Object object) {
+        return getKey(object).isPresent();
     }
 
-    public boolean hasObject(Object fieldValue) {
-        return objects.inverse().containsKey(fieldValue);
+    public SymbolTable getSentSymbols() {
+        return sentSymbols;
+    }
+
+    public SymbolTable getReceivedSymbols() {
+        return receivedSymbols;
+    }
+
+    public BackReferences getSentReferences() {
+        return sentReferences;
+    }
+
+    public BackReferences getReceivedReferences() {
+        return receivedReferences;
+    }
+
+    public BlobTransfer getBlobs() {
+        return blobs;
+    }
+
+    private final class Scope {
+
+        private final LongObjectMap<Entry> objects = new LongObjectMap<>();
+        // By identity, equal objects can still be different objects on the other side. Pipelined calls can register
+        // one object under several ids, it is sent under the first one
+        private final IdentityLongMap keys = new IdentityLongMap();
+        // Used instead of keys when holding objects weakly, MapMaker compares weak keys by identity as well
+        private final Map<Object, Long> weakKeys = weak ? new MapMaker().weakKeys().makeMap() : Map.of();
+
+        private long getKey(Object object) {
+            if (weak) {
+                Long key = weakKeys.get(object);
+                return key == null ? NO_KEY : key;
+            }
+            return keys.get(object, NO_KEY);
+        }
+    }
+
+    private static final class Entry {
+
+        private final long key;
+        // The object, or a weak reference to it
+        private final Object object;
+        private int references = 0;
+
+        private Entry(long key, Object object) {
+            this.key = key;
+            this.object = object;
+        }
+
+        private Object get() {
+            return object instanceof WeakReference<?> reference ? reference.get() : object;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,19 @@
 package org.mockbukkit.integrationtester.core.io;
 
-import java.io.OutputStream;
+import java.io.*;
 
 public interface Packet {
+
+    void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) throws IOException;
+
+    /**
+     * Reuse the stream if it already is a data stream, {@link PacketConnection} keeps one per connection
+     */
+    static DataOutputStream dataOutput(OutputStream outputStream) {
+        return outputStream instanceof DataOutputStream dataOutputStream ? dataOutputStream : new DataOutputStream(outputStream);
+    }
+
+    static DataInputStream dataInput(InputStream inputStream) {
+        return inputStream instanceof DataInputStream dataInputStream ? dataInputStream : new DataInputStream(inputStream);
+    }
 }
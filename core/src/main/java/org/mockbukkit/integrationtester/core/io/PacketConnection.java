@@ -0,0 +1,375 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class PacketConnection implements AutoCloseable {
+
+    /**
+     * Frames of at least this many bytes are compressed, a negative value disables compression
+     */
+    public static final int COMPRESSION_THRESHOLD = Integer.getInteger("paperintegrationtester.compressionThreshold", 1024);
+    public static final int COMPRESSION_DISABLED = -1;
+    /**
+     * The request id of packets the server sends on its own, clients start counting requests at 1
+     */
+    public static final int PUSH_REQUEST_ID = 0;
+    // Set in the length prefix, compressed frames start with their uncompressed length
+    private static final int COMPRESSED_FLAG = 0x80000000;
+    // The whole length prefix of a blob, followed by its id, kind and size instead of a request id
+    private static final int BLOB_FLAG = 0x40000000;
+    private static final byte BLOB_BYTES = 0;
+    private static final byte BLOB_STRING = 1;
+    private static final byte BLOB_FILE = 2;
+    private static final byte BLOB_PATH = 3;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final Socket socket;
+    private final DataOutputStream output;
+    private final DataInputStream input;
+    private final ObjectRegistry registry;
+    // A lock instead of synchronized, so virtual threads blocked on the socket do not pin their carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    // Reused for every frame, encoding only happens under the write lock and decoding on one thread
+    private final ByteBufferOutputStream encodeBuffer = new ByteBufferOutputStream();
+    private final DataOutputStream encodeOutput = new DataOutputStream(encodeBuffer);
+    private final ByteBufferInputStream decodeBuffer = new ByteBufferInputStream(EMPTY);
+    private final DataInputStream decodeInput = new DataInputStream(decodeBuffer);
+    private final WritableByteChannel outputChannel;
+    private final ReadableByteChannel inputChannel;
+    private int compressionThreshold = COMPRESSION_DISABLED;
+    private PacketFormat format = PacketFormat.BINARY;
+    // Holds the files received, created with the first one and deleted with the connection
+    private volatile Path blobDirectory;
+
+    public PacketConnection(Socket socket, ObjectRegistry registry) throws IOException {
+        this.socket = socket;
+        this.registry = registry;
+        socket.setTcpNoDelay(true);
+        this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.outputChannel = Channels.newChannel(output);
+        this.inputChannel = Channels.newChannel(input);
+    }
+
+    /**
+     * Announce the packet version and agree with the client on the compression threshold and the packet format. Has
+     * to happen before any frame is read or written
+     */
+    public void serverHandshake(int compressionThreshold) throws IOException {
+        output.writeByte(PacketVersion.VERSION);
+        output.flush();
+        byte version = input.readByte();
+        if (version != PacketVersion.VERSION) {
+            throw new IllegalStateException("The client speaks packet version " + version + ", the server " + PacketVersion.VERSION);
+        }
+        this.compressionThreshold = agreeThreshold(compressionThreshold, input.readInt());
+        this.format = readFormat(input.readByte());
+        output.writeInt(this.compressionThreshold);
+        output.flush();
+    }
+
+    /**
+     * Counterpart of {@link #serverHandshake(int)}, asking for the format of {@link PacketFactory#getFormat()}
+     *
+     * @return The agreed compression threshold
+     */
+    public int clientHandshake(int compressionThreshold) throws IOException {
+        return clientHandshake(compressionThreshold, PacketFactory.getFormat());
+    }
+
+    /**
+     * Counterpart of {@link #serverHandshake(int)}. Compression is only used when both sides support it, above the
+     * larger of both thresholds
+     *
+     * @param format The format both sides encode packets in from now on
+     * @return The agreed compression threshold
+     */
+    public int clientHandshake(int compressionThreshold, PacketFormat format) throws IOException {
+        byte version = input.readByte();
+        if (version != PacketVersion.VERSION) {
+            throw new IllegalStateException("The server speaks packet version " + version + ", the client " + PacketVersion.VERSION);
+        }
+        output.writeByte(PacketVersion.VERSION);
+        output.writeInt(compressionThreshold);
+        output.writeByte(format.ordinal());
+        output.flush();
+        this.format = format;
+        this.compressionThreshold = input.readInt();
+        return this.compressionThreshold;
+    }
+
+    private static PacketFormat readFormat(byte ordinal) {
+        PacketFormat[] formats = PacketFormat.values();
+        if (ordinal < 0 || ordinal >= formats.length) {
+            throw new IllegalStateException("Unknown packet format " + ordinal);
+        }
+        return formats[ordinal];
+    }
+
+    private static int agreeThreshold(int serverThreshold, int clientThreshold) {
+        if (serverThreshold < 0 || clientThreshold < 0) {
+            return COMPRESSION_DISABLED;
+        }
+        return Math.max(serverThreshold, clientThreshold);
+    }
+
+    /**
+     * Buffer a packet as a length prefixed frame, nothing is written to the socket until {@link #flush()}
+     *
+     * @param requestId The id of the request this packet starts or answers
+     * @param packet    The packet to send
+     */
+    public void send(int requestId, Packet packet) throws IOException {
+        writeLock.lock();
+        try {
+            // Encoded under the lock, symbols must be assigned in the order frames go out
+            encodeBuffer.reset();
+            int symbolCount = registry.getSentSymbols().size();
+            registry.markSentReferences();
+            try {
+                packet.send(encodeOutput, registry, format);
+            } catch (IOException | RuntimeException e) {
+                registry.getSentSymbols().truncate(symbolCount);
+                registry.discardSentReferences();
+                registry.getBlobs().discardOutgoing();
+                throw e;
+            }
+            BlobTransfer.Blob blob;
+            while ((blob = registry.getBlobs().pollOutgoing()) != null) {
+                writeBlob(blob);
+            }
+            ByteBuffer frame = encodeBuffer.getBuffer().flip();
+            if (compressionThreshold >= 0 && frame.remaining() >= compressionThreshold && writeCompressed(requestId, frame)) {
+                return;
+            }
+            output.writeInt(frame.remaining());
+            output.writeInt(requestId);
+            output.write(frame.array(), frame.arrayOffset(), frame.remaining());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean writeCompressed(int requestId, ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        // Could never get smaller than the uncompressed length it has to carry
+        if (length <= Integer.BYTES) {
+            return false;
+        }
+        deflater.reset();
+        deflater.setInput(payload.duplicate());
+        deflater.finish();
+        // Only worth it if the compressed frame, with its length, ends up smaller
+        ByteBuffer compressed = BufferPool.acquire(length).limit(length - Integer.BYTES);
+        try {
+            while (!deflater.finished()) {
+                if (!compressed.hasRemaining()) {
+                    return false;
+                }
+                deflater.deflate(compressed);
+            }
+            compressed.flip();
+            output.writeInt((compressed.remaining() + Integer.BYTES) | COMPRESSED_FLAG);
+            output.writeInt(requestId);
+            output.writeInt(length);
+            output.write(compressed.array(), compressed.arrayOffset(), compressed.remaining());
+            bytesSaved.addAndGet(length - compressed.remaining() - Integer.BYTES);
+            return true;
+        } finally {
+            BufferPool.release(compressed);
+        }
+    }
+
+    private void writeBlob(BlobTransfer.Blob blob) throws IOException {
+        output.writeInt(BLOB_FLAG);
+        output.writeInt(blob.id());
+        Object value = blob.value();
+        if (value instanceof byte[] || value instanceof String) {
+            byte[] bytes = value instanceof String string ? string.getBytes(StandardCharsets.UTF_8) : (byte[]) value;
+            output.writeByte(value instanceof String ? BLOB_STRING : BLOB_BYTES);
+            output.writeLong(bytes.length);
+            for (int offset = 0; offset < bytes.length; offset += BlobTransfer.CHUNK_SIZE) {
+                output.write(bytes, offset, Math.min(BlobTransfer.CHUNK_SIZE, bytes.length - offset));
+            }
+            return;
+        }
+        Path path = value instanceof File file ? file.toPath() : (Path) value;
+        output.writeByte(value instanceof File ? BLOB_FILE : BLOB_PATH);
+        output.writeUTF(path.getFileName().toString());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            output.writeLong(size);
+            for (long position = 0; position < size; ) {
+                position += channel.transferTo(position, Math.min(BlobTransfer.CHUNK_SIZE, size - position), outputChannel);
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        writeLock.lock();
+        try {
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Only one thread may read from a connection. Blobs sent ahead of the frame are handed to the
+     * {@link BlobTransfer} of the registry
+     */
+    public Frame receiveFrame() throws IOException {
+        int lengthPrefix = input.readInt();
+        int requestId = input.readInt();
+        int[] blobIds = new int[0];
+        while (lengthPrefix == BLOB_FLAG) {
+            registry.getBlobs().put(requestId, readBlob(requestId));
+            blobIds = Arrays.copyOf(blobIds, blobIds.length + 1);
+            blobIds[blobIds.length - 1] = requestId;
+            lengthPrefix = input.readInt();
+            requestId = input.readInt();
+        }
+        if ((lengthPrefix & COMPRESSED_FLAG) == 0) {
+            return new Frame(requestId, readBuffer(lengthPrefix), blobIds);
+        }
+        int length = input.readInt();
+        ByteBuffer compressed = readBuffer((lengthPrefix & ~COMPRESSED_FLAG) - Integer.BYTES);
+        ByteBuffer payload = BufferPool.acquire(length).limit(length);
+        try {
+            inflater.reset();
+            inflater.setInput(compressed);
+            inflater.inflate(payload);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            BufferPool.release(compressed);
+        }
+        if (payload.hasRemaining()) {
+            throw new IOException("Truncated compressed frame");
+        }
+        return new Frame(requestId, payload.flip(), blobIds);
+    }
+
+    private Object readBlob(int id) throws IOException {
+        byte kind = input.readByte();
+        if (kind == BLOB_BYTES || kind == BLOB_STRING) {
+            byte[] bytes = new byte[Math.toIntExact(input.readLong())];
+            for (int offset = 0; offset < bytes.length; offset += BlobTransfer.CHUNK_SIZE) {
+                input.readFully(bytes, offset, Math.min(BlobTransfer.CHUNK_SIZE, bytes.length - offset));
+            }
+            return kind == BLOB_STRING ? new String(bytes, StandardCharsets.UTF_8) : bytes;
+        }
+        String name = input.readUTF();
+        if (blobDirectory == null) {
+            blobDirectory = Files.createTempDirectory("paperintegrationtester");
+        }
+        // Each file gets a directory of its own, so files of the same name keep their name
+        Path path = Files.createDirectory(blobDirectory.resolve(Integer.toString(id))).resolve(checkFileName(name));
+        long size = input.readLong();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (long position = 0; position < size; ) {
+                long transferred = channel.transferFrom(inputChannel, position, Math.min(BlobTransfer.CHUNK_SIZE, size - position));
+                if (transferred == 0) {
+                    throw new EOFException("Connection closed during blob " + name);
+                }
+                position += transferred;
+            }
+        }
+        return kind == BLOB_FILE ? path.toFile() : path;
+    }
+
+    /**
+     * @return The name, if it only names a file and can not reach outside the directory it is resolved against
+     */
+    private static String checkFileName(String name) throws IOException {
+        try {
+            Path fileName = Path.of(name).getFileName();
+            if (fileName != null && fileName.toString().equals(name) && !name.equals(".") && !name.equals("..")) {
+                return name;
+            }
+        } catch (InvalidPathException e) {
+            throw new IOException("Invalid blob file name " + name, e);
+        }
+        throw new IOException("Invalid blob file name " + name);
+    }
+
+    private ByteBuffer readBuffer(int length) throws IOException {
+        ByteBuffer buffer = BufferPool.acquire(length);
+        input.readFully(buffer.array(), buffer.arrayOffset(), length);
+        return buffer.limit(length);
+    }
+
+    /**
+     * Every received frame has to be decoded, in the order it was received and on one thread. Gives the payload
+     * back to the {@link BufferPool}, and drops the blobs of the frame it did not use
+     */
+    public Packet decode(Frame frame) {
+        decodeBuffer.setBuffer(frame.payload());
+        try {
+            return PacketFactory.fromStream(decodeInput, registry, format);
+        } finally {
+            registry.getBlobs().discardReceived(frame.blobIds());
+            decodeBuffer.setBuffer(EMPTY);
+            BufferPool.release(frame.payload());
+        }
+    }
+
+    /**
+     * @return The format the client picked during the handshake
+     */
+    public PacketFormat getFormat() {
+        return format;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * @return How many bytes compression has kept off the wire for frames sent on this connection
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * Closes the socket and deletes the files received over this connection
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        Path directory = blobDirectory;
+        if (directory == null) {
+            return;
+        }
+        blobDirectory = null;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            // Files before the directories containing them
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
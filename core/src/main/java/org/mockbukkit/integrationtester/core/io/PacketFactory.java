@@ -6,15 +6,52 @@ import java.io.InputStream;
 
 public class PacketFactory {
 
+    // Connections agree on their own format during the handshake, this is only what clients ask for
+    private static PacketFormat format = PacketFormat.BINARY;
+
+    public static PacketFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Set the format packets sent and received without a {@link PacketFormat} use, and that clients ask for when they
+     * connect. Connections that already completed their handshake keep theirs
+     */
+    public static void setFormat(PacketFormat format) {
+        PacketFactory.format = format;
+    }
+
     public static Packet fromStream(InputStream stream, ObjectRegistry registry) {
-        try (DataInputStream dataInputStream = new DataInputStream(stream)) {
+        return fromStream(stream, registry, format);
+    }
+
+    public static Packet fromStream(InputStream stream, ObjectRegistry registry, PacketFormat format) {
+        // Left over if the previous packet could not be read to its end
+        registry.takeDecodeFailure();
+        try (DataInputStream dataInputStream = Packet.dataInput(stream)) {
             short id = dataInputStream.readShort();
-            return switch (id) {
-                case MethodReturnCall.ID -> MethodReturnCall.receive(dataInputStream, registry);
-                case MethodCall.ID -> MethodCall.receive(dataInputStream, registry);
-                case FieldFetchCall.ID -> FieldFetchCall.receive(dataInputStream);
+            Packet packet = switch (id) {
+                case MethodReturnCall.ID -> MethodReturnCall.receive(dataInputStream, registry, format);
+                case MethodCall.ID -> MethodCall.receive(dataInputStream, registry, format);
+                case FieldFetchCall.ID -> FieldFetchCall.receive(dataInputStream, registry, format);
+                case FieldSnapshotCall.ID -> FieldSnapshotCall.receive(dataInputStream, registry, format);
+                case MethodExceptionCall.ID -> MethodExceptionCall.receive(dataInputStream, registry);
+                case MethodCallBatch.ID -> MethodCallBatch.receive(dataInputStream, registry, format);
+                case FieldSnapshotBatch.ID -> FieldSnapshotBatch.receive(dataInputStream, registry, format);
+                case ServerTickPacket.ID -> ServerTickPacket.receive(dataInputStream);
+                case ReleasePacket.ID -> ReleasePacket.receive(dataInputStream);
+                case ScopePacket.ID -> ScopePacket.receive(dataInputStream);
+                case InvalidationPacket.ID -> InvalidationPacket.receive(dataInputStream);
+                case PageCall.ID -> PageCall.receive(dataInputStream);
+                case RemoteCollectionsPacket.ID -> RemoteCollectionsPacket.receive(dataInputStream);
                 default -> throw new IllegalArgumentException("Unknown packet id: " + id);
             };
+            // Only now, the symbols the packet defines after what could not be resolved are known as well
+            RuntimeException failure = registry.takeDecodeFailure();
+            if (failure != null) {
+                throw failure;
+            }
+            return packet;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,12 @@
+package org.mockbukkit.integrationtester.core.io;
+
+public enum PacketFormat {
+    /**
+     * Gson tree serialized as a modified UTF-8 string, limited to 64 KB per packet
+     */
+    JSON,
+    /**
+     * One byte type tags, varint object ids and raw primitives
+     */
+    BINARY
+}
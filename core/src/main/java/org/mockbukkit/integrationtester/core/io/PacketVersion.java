@@ -2,5 +2,8 @@ package org.mockbukkit.integrationtester.core.io;
 
 public class PacketVersion {
 
-    public static final byte VERSION = 0;
+    /**
+     * Both sides have to speak the same version, the server announces it and the client answers with its own
+     */
+    public static final byte VERSION = 1;
 }
@@ -0,0 +1,28 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
+
+import java.io.*;
+
+/**
+ * Fetches elements of a {@link CollectionCursor}, answered by a {@link MethodReturnCall} with an array of them
+ */
+public record PageCall(long cursorId, int offset, int length) implements Packet {
+
+    public static final short ID = 10;
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            dataOutputStream.writeShort(ID);
+            BinaryObjectUtil.writeSignedVarLong(dataOutputStream, cursorId);
+            BinaryObjectUtil.writeVarInt(dataOutputStream, offset);
+            BinaryObjectUtil.writeVarInt(dataOutputStream, length);
+        }
+    }
+
+    public static PageCall receive(InputStream inputStream) throws IOException {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            return new PageCall(BinaryObjectUtil.readSignedVarLong(dataInputStream), BinaryObjectUtil.readVarInt(dataInputStream), BinaryObjectUtil.readVarInt(dataInputStream));
+        }
+    }
+}
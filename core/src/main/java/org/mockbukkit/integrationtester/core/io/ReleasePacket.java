@@ -0,0 +1,49 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
+
+import java.io.*;
+
+/**
+ * Sent by the client for mirrors it has garbage collected, see {@link ObjectRegistry}. Also renews the lease of the
+ * client: if the server hears nothing for {@link #LEASE_DURATION} milliseconds, it assumes the client died and forgets
+ * every object. Answered by a {@link MethodReturnCall}
+ *
+ * @param keys       The ids to release
+ * @param references How many references to the id at the same index the client received
+ */
+public record ReleasePacket(long[] keys, int[] references) implements Packet {
+
+    public static final short ID = 6;
+    public static final long LEASE_DURATION = Long.getLong("paperintegrationtester.leaseDuration", 60_000);
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            dataOutputStream.writeShort(ID);
+            BinaryObjectUtil.writeVarInt(dataOutputStream, keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                BinaryObjectUtil.writeSignedVarLong(dataOutputStream, keys[i]);
+                BinaryObjectUtil.writeVarInt(dataOutputStream, references[i]);
+            }
+        }
+    }
+
+    public static ReleasePacket receive(InputStream inputStream) throws IOException {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            int length = BinaryObjectUtil.readVarInt(dataInputStream);
+            long[] keys = new long[length];
+            int[] references = new int[length];
+            for (int i = 0; i < length; i++) {
+                keys[i] = BinaryObjectUtil.readSignedVarLong(dataInputStream);
+                references[i] = BinaryObjectUtil.readVarInt(dataInputStream);
+            }
+            return new ReleasePacket(keys, references);
+        }
+    }
+
+    public void releaseFrom(ObjectRegistry registry) {
+        for (int i = 0; i < keys.length; i++) {
+            registry.release(keys[i], references[i]);
+        }
+    }
+}
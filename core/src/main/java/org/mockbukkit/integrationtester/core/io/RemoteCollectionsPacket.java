@@ -0,0 +1,29 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.mockbukkit.integrationtester.core.util.BinaryObjectUtil;
+
+import java.io.*;
+
+/**
+ * Makes the server return collections with more elements than fit in a page as {@link CollectionCursor}. Answered by
+ * a {@link MethodReturnCall}
+ *
+ * @param pageSize The number of elements per page, 0 to return all collections in full again
+ */
+public record RemoteCollectionsPacket(int pageSize) implements Packet {
+
+    public static final short ID = 11;
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            dataOutputStream.writeShort(ID);
+            BinaryObjectUtil.writeVarInt(dataOutputStream, pageSize);
+        }
+    }
+
+    public static RemoteCollectionsPacket receive(InputStream inputStream) throws IOException {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            return new RemoteCollectionsPacket(BinaryObjectUtil.readVarInt(dataInputStream));
+        }
+    }
+}
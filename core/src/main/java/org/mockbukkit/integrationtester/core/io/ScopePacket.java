@@ -0,0 +1,25 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import java.io.*;
+
+/**
+ * Opens or closes a scope of the {@link ObjectRegistry} on the server, after every call sent before it. Answered by a
+ * {@link MethodReturnCall}
+ */
+public record ScopePacket(boolean open) implements Packet {
+
+    public static final short ID = 7;
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            dataOutputStream.writeShort(ID);
+            dataOutputStream.writeBoolean(open);
+        }
+    }
+
+    public static ScopePacket receive(InputStream inputStream) throws IOException {
+        try (DataInputStream dataInputStream = Packet.dataInput(inputStream)) {
+            return new ScopePacket(dataInputStream.readBoolean());
+        }
+    }
+}
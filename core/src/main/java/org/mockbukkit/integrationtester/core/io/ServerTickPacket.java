@@ -0,0 +1,21 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import java.io.*;
+
+/**
+ * Answered by a {@link MethodReturnCall} once the server has started its next tick
+ */
+public record ServerTickPacket() implements Packet {
+
+    public static final short ID = 5;
+
+    public void send(OutputStream outputStream, ObjectRegistry registry, PacketFormat format) throws IOException {
+        try (DataOutputStream dataOutputStream = Packet.dataOutput(outputStream)) {
+            dataOutputStream.writeShort(ID);
+        }
+    }
+
+    public static ServerTickPacket receive(InputStream inputStream) {
+        return new ServerTickPacket();
+    }
+}
@@ -0,0 +1,57 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Strings like class, method and field names that have already been sent once over a connection. Each side keeps one
+ * table for what it sent and one for what it received, both grow in the same order so ids line up. Not thread safe,
+ * {@link PacketConnection} encodes and decodes one frame at a time
+ */
+public class SymbolTable {
+
+    private static final int MAX_SIZE = 1 << 16;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+
+    /**
+     * @return The id of the symbol, or -1 if it has not been sent yet
+     */
+    public int getId(String symbol) {
+        return ids.getOrDefault(symbol, -1);
+    }
+
+    public String getSymbol(int id) {
+        if (id >= symbols.size()) {
+            throw new IllegalStateException("Unknown symbol id " + id);
+        }
+        return symbols.get(id);
+    }
+
+    /**
+     * Add a symbol, unless the table is full
+     */
+    public void add(String symbol) {
+        if (symbols.size() >= MAX_SIZE) {
+            return;
+        }
+        ids.put(symbol, symbols.size());
+        symbols.add(symbol);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    /**
+     * Forget every symbol added after the table had the given size, used when a frame could not be sent after all
+     */
+    public void truncate(int size) {
+        while (symbols.size() > size) {
+            ids.remove(symbols.remove(symbols.size() - 1));
+        }
+    }
+}
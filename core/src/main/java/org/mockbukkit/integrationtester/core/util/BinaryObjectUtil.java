@@ -0,0 +1,427 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import com.google.common.primitives.Primitives;
+import org.mockbukkit.integrationtester.core.io.BackReferences;
+import org.mockbukkit.integrationtester.core.io.BlobTransfer;
+import org.mockbukkit.integrationtester.core.io.ObjectRegistry;
+import org.mockbukkit.integrationtester.core.io.SymbolTable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class BinaryObjectUtil {
+
+    public static final byte NULL = 0;
+    public static final byte MARKED = 1;
+    public static final byte ARRAY = 2;
+    public static final byte LIST = 3;
+    public static final byte SET = 4;
+    public static final byte BOOLEAN = 5;
+    public static final byte BYTE = 6;
+    public static final byte SHORT = 7;
+    public static final byte INTEGER = 8;
+    public static final byte LONG = 9;
+    public static final byte FLOAT = 10;
+    public static final byte DOUBLE = 11;
+    public static final byte CHARACTER = 12;
+    public static final byte STRING = 13;
+    /**
+     * Followed by the element type, one of the primitive tags, the length and all elements back to back
+     */
+    public static final byte PRIMITIVE_ARRAY = 14;
+    /**
+     * Followed by the id of a blob streamed ahead of the frame, see {@link BlobTransfer}
+     */
+    public static final byte BLOB = 15;
+    /**
+     * Followed by the index of a value that already occurred in the same packet, see {@link BackReferences}
+     */
+    public static final byte BACK_REFERENCE = 16;
+    /**
+     * Followed by the name of a {@link ValueCodec} as symbol and the components of the value as array
+     */
+    public static final byte VALUE = 17;
+
+    private BinaryObjectUtil() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static void writeObject(DataOutput output, Object object, ObjectRegistry objectRegistry) throws IOException {
+        if (object == null) {
+            output.writeByte(NULL);
+            return;
+        }
+        if (!Primitives.isWrapperType(object.getClass())) {
+            BackReferences references = objectRegistry.getSentReferences();
+            int index = references.indexOf(object);
+            if (index >= 0) {
+                output.writeByte(BACK_REFERENCE);
+                writeVarInt(output, index);
+                return;
+            }
+            references.add(object);
+        }
+        Optional<Long> objectId = ObjectUtil.isValue(object) ? Optional.empty() : objectRegistry.getSentKey(object);
+        if (objectId.isPresent()) {
+            output.writeByte(MARKED);
+            writeSignedVarLong(output, objectId.get());
+            objectRegistry.referenceSent(objectId.get());
+            writeSymbol(output, object.getClass().getName(), objectRegistry.getSentSymbols());
+            return;
+        }
+        if (objectRegistry.getBlobs().isBlob(object)) {
+            output.writeByte(BLOB);
+            writeVarInt(output, objectRegistry.getBlobs().queue(object));
+        } else if (object instanceof Object[] objectArray) {
+            output.writeByte(ARRAY);
+            writeArray(output, objectArray, objectRegistry);
+        } else if (object.getClass().isArray()) {
+            output.writeByte(PRIMITIVE_ARRAY);
+            writePrimitiveArray(output, object);
+        } else if (object instanceof List<?> list) {
+            output.writeByte(LIST);
+            writeElements(output, list, objectRegistry);
+        } else if (object instanceof Set<?> set) {
+            output.writeByte(SET);
+            writeElements(output, set, objectRegistry);
+        } else if (object instanceof Boolean value) {
+            output.writeByte(BOOLEAN);
+            output.writeBoolean(value);
+        } else if (object instanceof Byte value) {
+            output.writeByte(BYTE);
+            output.writeByte(value);
+        } else if (object instanceof Short value) {
+            output.writeByte(SHORT);
+            output.writeShort(value);
+        } else if (object instanceof Integer value) {
+            output.writeByte(INTEGER);
+            output.writeInt(value);
+        } else if (object instanceof Long value) {
+            output.writeByte(LONG);
+            output.writeLong(value);
+        } else if (object instanceof Float value) {
+            output.writeByte(FLOAT);
+            output.writeFloat(value);
+        } else if (object instanceof Double value) {
+            output.writeByte(DOUBLE);
+            output.writeDouble(value);
+        } else if (object instanceof Character value) {
+            output.writeByte(CHARACTER);
+            output.writeChar(value);
+        } else if (object instanceof String value) {
+            output.writeByte(STRING);
+            writeString(output, value);
+        } else {
+            writeValue(output, object, objectRegistry);
+        }
+    }
+
+    private static void writeValue(DataOutput output, Object object, ObjectRegistry objectRegistry) throws IOException {
+        ValueCodec<Object> codec = ValueCodecs.find(object.getClass());
+        if (codec == null) {
+            throw new UnsupportedOperationException("Unknown object: " + object);
+        }
+        output.writeByte(VALUE);
+        writeSymbol(output, codec.getName(), objectRegistry.getSentSymbols());
+        writeArray(output, codec.encode(object), objectRegistry);
+    }
+
+    private static void writeElements(DataOutput output, Collection<?> collection, ObjectRegistry objectRegistry) throws IOException {
+        writeVarInt(output, collection.size());
+        for (Object element : collection) {
+            writeObject(output, element, objectRegistry);
+        }
+    }
+
+    public static Object readObject(DataInput input, ObjectRegistry objectRegistry) throws IOException {
+        byte type = input.readByte();
+        BackReferences references = objectRegistry.getReceivedReferences();
+        // Containers are referenced before their elements are read, the same order they were written in
+        return switch (type) {
+            case NULL -> null;
+            case BACK_REFERENCE -> references.get(readVarInt(input));
+            case ARRAY -> {
+                Object[] objects = new Object[readVarInt(input)];
+                references.add(objects);
+                for (int i = 0; i < objects.length; i++) {
+                    objects[i] = readObject(input, objectRegistry);
+                }
+                yield objects;
+            }
+            case LIST -> {
+                int size = readVarInt(input);
+                List<Object> list = new ArrayList<>(size);
+                references.add(list);
+                for (int i = 0; i < size; i++) {
+                    list.add(readObject(input, objectRegistry));
+                }
+                yield list;
+            }
+            case SET -> {
+                int size = readVarInt(input);
+                Set<Object> set = new HashSet<>();
+                references.add(set);
+                for (int i = 0; i < size; i++) {
+                    set.add(readObject(input, objectRegistry));
+                }
+                yield set;
+            }
+            case BOOLEAN -> input.readBoolean();
+            case BYTE -> input.readByte();
+            case SHORT -> input.readShort();
+            case INTEGER -> input.readInt();
+            case LONG -> input.readLong();
+            case FLOAT -> input.readFloat();
+            case DOUBLE -> input.readDouble();
+            case CHARACTER -> input.readChar();
+            case VALUE -> {
+                // The value was referenced before its components were written
+                int index = references.reserve();
+                String className = readSymbol(input, objectRegistry.getReceivedSymbols());
+                Object[] components = readArray(input, objectRegistry);
+                Object value = objectRegistry.resolveReceived(() -> ValueCodecs.get(className).decode(components));
+                references.set(index, value);
+                yield value;
+            }
+            default -> {
+                Object value = readReferenceable(type, input, objectRegistry);
+                references.add(value);
+                yield value;
+            }
+        };
+    }
+
+    private static Object readReferenceable(byte type, DataInput input, ObjectRegistry objectRegistry) throws IOException {
+        return switch (type) {
+            case MARKED -> {
+                long id = readSignedVarLong(input);
+                String className = readSymbol(input, objectRegistry.getReceivedSymbols());
+                yield objectRegistry.resolveReceived(() -> objectRegistry.referenceReceived(id, () -> ObjectUtil.createNew(className, objectRegistry)));
+            }
+            case PRIMITIVE_ARRAY -> readPrimitiveArray(input);
+            case BLOB -> objectRegistry.getBlobs().take(readVarInt(input));
+            case STRING -> readString(input);
+            default -> throw new IllegalStateException("Unexpected type: " + type);
+        };
+    }
+
+    public static void writeArray(DataOutput output, Object[] objects, ObjectRegistry objectRegistry) throws IOException {
+        writeVarInt(output, objects.length);
+        for (Object object : objects) {
+            writeObject(output, object, objectRegistry);
+        }
+    }
+
+    public static Object[] readArray(DataInput input, ObjectRegistry objectRegistry) throws IOException {
+        Object[] objects = new Object[readVarInt(input)];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = readObject(input, objectRegistry);
+        }
+        return objects;
+    }
+
+    private static void writePrimitiveArray(DataOutput output, Object array) throws IOException {
+        if (array instanceof byte[] bytes) {
+            output.writeByte(BYTE);
+            writeVarInt(output, bytes.length);
+            output.write(bytes);
+        } else if (array instanceof int[] ints) {
+            output.writeByte(INTEGER);
+            writeVarInt(output, ints.length);
+            for (int value : ints) {
+                output.writeInt(value);
+            }
+        } else if (array instanceof long[] longs) {
+            output.writeByte(LONG);
+            writeVarInt(output, longs.length);
+            for (long value : longs) {
+                output.writeLong(value);
+            }
+        } else if (array instanceof double[] doubles) {
+            output.writeByte(DOUBLE);
+            writeVarInt(output, doubles.length);
+            for (double value : doubles) {
+                output.writeDouble(value);
+            }
+        } else if (array instanceof float[] floats) {
+            output.writeByte(FLOAT);
+            writeVarInt(output, floats.length);
+            for (float value : floats) {
+                output.writeFloat(value);
+            }
+        } else if (array instanceof short[] shorts) {
+            output.writeByte(SHORT);
+            writeVarInt(output, shorts.length);
+            for (short value : shorts) {
+                output.writeShort(value);
+            }
+        } else if (array instanceof char[] chars) {
+            output.writeByte(CHARACTER);
+            writeVarInt(output, chars.length);
+            for (char value : chars) {
+                output.writeChar(value);
+            }
+        } else if (array instanceof boolean[] booleans) {
+            output.writeByte(BOOLEAN);
+            writeVarInt(output, booleans.length);
+            for (boolean value : booleans) {
+                output.writeBoolean(value);
+            }
+        } else {
+            throw new UnsupportedOperationException("Unknown array: " + array.getClass());
+        }
+    }
+
+    private static Object readPrimitiveArray(DataInput input) throws IOException {
+        byte elementType = input.readByte();
+        int length = readVarInt(input);
+        switch (elementType) {
+            case BYTE -> {
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                return bytes;
+            }
+            case INTEGER -> {
+                int[] ints = new int[length];
+                for (int i = 0; i < length; i++) {
+                    ints[i] = input.readInt();
+                }
+                return ints;
+            }
+            case LONG -> {
+                long[] longs = new long[length];
+                for (int i = 0; i < length; i++) {
+                    longs[i] = input.readLong();
+                }
+                return longs;
+            }
+            case DOUBLE -> {
+                double[] doubles = new double[length];
+                for (int i = 0; i < length; i++) {
+                    doubles[i] = input.readDouble();
+                }
+                return doubles;
+            }
+            case FLOAT -> {
+                float[] floats = new float[length];
+                for (int i = 0; i < length; i++) {
+                    floats[i] = input.readFloat();
+                }
+                return floats;
+            }
+            case SHORT -> {
+                short[] shorts = new short[length];
+                for (int i = 0; i < length; i++) {
+                    shorts[i] = input.readShort();
+                }
+                return shorts;
+            }
+            case CHARACTER -> {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = input.readChar();
+                }
+                return chars;
+            }
+            case BOOLEAN -> {
+                boolean[] booleans = new boolean[length];
+                for (int i = 0; i < length; i++) {
+                    booleans[i] = input.readBoolean();
+                }
+                return booleans;
+            }
+            default -> throw new IllegalStateException("Unexpected array type: " + elementType);
+        }
+    }
+
+    public static void writeString(DataOutput output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    public static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[readVarInt(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a string that is likely to be repeated during the session, it is sent in full only the first time
+     */
+    public static void writeSymbol(DataOutput output, String symbol, SymbolTable sentSymbols) throws IOException {
+        int id = sentSymbols.getId(symbol);
+        if (id >= 0) {
+            writeVarInt(output, id + 1);
+            return;
+        }
+        writeVarInt(output, 0);
+        writeString(output, symbol);
+        sentSymbols.add(symbol);
+    }
+
+    public static String readSymbol(DataInput input, SymbolTable receivedSymbols) throws IOException {
+        int id = readVarInt(input);
+        if (id > 0) {
+            return receivedSymbols.getSymbol(id - 1);
+        }
+        String symbol = readString(input);
+        receivedSymbols.add(symbol);
+        return symbol;
+    }
+
+    public static void writeVarInt(DataOutput output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte next = input.readByte();
+            value |= (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("VarInt too big");
+    }
+
+    public static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte next = input.readByte();
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("VarLong too big");
+    }
+
+    /**
+     * Zigzag encoded, so ids minted by the client, which are negative, stay as short as those of the server
+     */
+    public static void writeSignedVarLong(DataOutput output, long value) throws IOException {
+        writeVarLong(output, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(DataInput input) throws IOException {
+        long value = readVarLong(input);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,136 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Open addressing map from objects, compared by identity, to primitive longs. Not thread safe
+ */
+public class IdentityLongMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    // A null key marks an empty slot
+    private Object[] keys;
+    private long[] values;
+    private int size;
+
+    public IdentityLongMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public IdentityLongMap(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1);
+        this.keys = new Object[capacity];
+        this.values = new long[capacity];
+    }
+
+    /**
+     * @return The value of the key, or the default value if the key is not in this map
+     */
+    public long get(Object key, long defaultValue) {
+        int mask = keys.length - 1;
+        for (int index = hash(key) & mask; ; index = (index + 1) & mask) {
+            Object candidate = keys[index];
+            if (candidate == null) {
+                return defaultValue;
+            }
+            if (candidate == key) {
+                return values[index];
+            }
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        int mask = keys.length - 1;
+        for (int index = hash(key) & mask; ; index = (index + 1) & mask) {
+            Object candidate = keys[index];
+            if (candidate == null) {
+                return false;
+            }
+            if (candidate == key) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return False if the key was already in this map, its value is kept
+     */
+    public boolean putIfAbsent(Object key, long value) {
+        Objects.requireNonNull(key, "key");
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (keys[index] != null) {
+            if (keys[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return true;
+    }
+
+    public boolean remove(Object key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (keys[index] != null && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        if (keys[index] == null) {
+            return false;
+        }
+        // Same backward shift as LongObjectMap, no tombstones
+        int gap = index;
+        keys[gap] = null;
+        for (int i = (gap + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                keys[i] = null;
+                gap = i;
+            }
+        }
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        long[] oldValues = values;
+        this.keys = new Object[capacity];
+        this.values = new long[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) {
+                continue;
+            }
+            int index = hash(oldKeys[i]) & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    private static int hash(Object key) {
+        int hash = System.identityHashCode(key);
+        // Identity hashes can leave the low bits poorly distributed
+        return hash ^ (hash >>> 16);
+    }
+}
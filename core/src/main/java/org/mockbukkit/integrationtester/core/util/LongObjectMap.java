@@ -0,0 +1,127 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Open addressing map from primitive longs to non null values, so keys are never boxed. Not thread safe
+ */
+public class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    // A null value marks an empty slot
+    private Object[] values;
+    private int size;
+
+    public LongObjectMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1);
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+    }
+
+    public V get(long key) {
+        int mask = values.length - 1;
+        for (int index = hash(key) & mask; ; index = (index + 1) & mask) {
+            Object value = values[index];
+            if (value == null) {
+                return null;
+            }
+            if (keys[index] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return The previous value, or null if there was none
+     */
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "value");
+        int mask = values.length - 1;
+        int index = hash(key) & mask;
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        // Keep the table at most half full, probe sequences stay short
+        if (++size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    public V remove(long key) {
+        int mask = values.length - 1;
+        int index = hash(key) & mask;
+        while (values[index] != null && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        V removed = (V) values[index];
+        if (removed == null) {
+            return null;
+        }
+        // Shift later entries of the same probe sequence back instead of leaving a tombstone
+        int gap = index;
+        values[gap] = null;
+        for (int i = (gap + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                values[i] = null;
+                gap = i;
+            }
+        }
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+            int index = hash(oldKeys[i]) & mask;
+            while (values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    private static int hash(long key) {
+        // Ids are handed out sequentially, so neighbouring ids land in neighbouring slots without colliding
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,68 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+
+/**
+ * Creates mirrors of objects received from the other side. The factory of a class is built on first sight of it and
+ * calls the constructor directly, without reflection. Generated mirrors get a constructor taking {@link Received}, which
+ * does nothing but register the mirror for its fields, unlike the constructors tests call. Classes without one are
+ * created through their parameterless constructor
+ */
+public class MirrorFactories {
+
+    private static final ClassValue<Supplier<Object>> FACTORIES = new ClassValue<>() {
+        @Override
+        protected Supplier<Object> computeValue(Class<?> type) {
+            return createFactory(type);
+        }
+    };
+
+    private MirrorFactories() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static <T> T newMirror(Class<T> type) {
+        return (T) FACTORIES.get(type).get();
+    }
+
+    private static Supplier<Object> createFactory(Class<?> type) {
+        // Would only fail once the factory is called
+        if (Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalStateException("Could not create a mirror of abstract " + type);
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            MethodHandle constructor;
+            try {
+                constructor = lookup.findConstructor(type, MethodType.methodType(void.class, Received.class));
+            } catch (NoSuchMethodException e) {
+                constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+            }
+            // Captures the Received instance, if the constructor takes it
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "get", constructor.type().changeReturnType(Supplier.class),
+                    MethodType.methodType(Object.class), constructor, MethodType.methodType(type));
+            return constructor.type().parameterCount() == 0
+                    ? (Supplier<Object>) callSite.getTarget().invoke()
+                    : (Supplier<Object>) callSite.getTarget().invoke(Received.INSTANCE);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not create a mirror of " + type, e);
+        }
+    }
+
+    /**
+     * The parameter of the constructor generated for mirrors of received objects, so it can not be called by accident
+     */
+    public static final class Received {
+
+        private static final Received INSTANCE = new Received();
+
+        private Received() {
+        }
+    }
+}
@@ -2,14 +2,15 @@ package org.mockbukkit.integrationtester.core.util;
 
 import com.google.common.primitives.Primitives;
 import com.google.gson.*;
+import org.jetbrains.annotations.Nullable;
+import org.mockbukkit.integrationtester.core.io.BackReferences;
 import org.mockbukkit.integrationtester.core.io.ObjectRegistry;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class ObjectUtil {
@@ -28,35 +29,69 @@ public class ObjectUtil {
 
     public static Object readObject(JsonElement jsonElement, ObjectRegistry objectRegistry) {
         JsonObject jsonObject = jsonElement.getAsJsonObject();
+        BackReferences references = objectRegistry.getReceivedReferences();
+        return switch (jsonObject.get("type").getAsString()) {
+            case "null" -> null;
+            case "reference" -> references.get(jsonObject.get("index").getAsInt());
+            case "array" -> {
+                JsonArray elements = jsonObject.get("elements").getAsJsonArray();
+                Object[] objects = new Object[elements.size()];
+                references.add(objects);
+                for (int i = 0; i < objects.length; i++) {
+                    objects[i] = readObject(elements.get(i), objectRegistry);
+                }
+                yield objects;
+            }
+            case "collection" -> {
+                Collection<Object> collection = newCollection(jsonObject.get("class_type").getAsString());
+                references.add(collection);
+                for (JsonElement element : jsonObject.get("elements").getAsJsonArray()) {
+                    collection.add(readObject(element, objectRegistry));
+                }
+                yield collection;
+            }
+            case "value" -> {
+                // The value was referenced before its components were written
+                int index = references.reserve();
+                ValueCodec<Object> codec = ValueCodecs.get(jsonObject.get("class_type").getAsString());
+                Object value = codec.decode(readArray(jsonObject.get("elements").getAsJsonArray(), objectRegistry));
+                references.set(index, value);
+                yield value;
+            }
+            case "primitive" -> {
+                Object value = readPrimitive((JsonPrimitive) jsonObject.get("value"), jsonObject.get("class_type").getAsString());
+                if (value instanceof String) {
+                    references.add(value);
+                }
+                yield value;
+            }
+            default -> {
+                Object value = readReferenceable(jsonObject, objectRegistry);
+                references.add(value);
+                yield value;
+            }
+        };
+    }
+
+    private static Object readReferenceable(JsonObject jsonObject, ObjectRegistry objectRegistry) {
         return switch (jsonObject.get("type").getAsString()) {
             case "marked" -> {
                 long id = jsonObject.get("objectId").getAsLong();
-                if (objectRegistry.hasKey(id)) {
-                    yield objectRegistry.getObject(id);
-                }
-                Object object = createNew(jsonObject.get("class_type").getAsString());
-                objectRegistry.putObject(id, object);
-                yield object;
-            }
-            case "array" -> readArray(jsonObject.get("elements").getAsJsonArray(), objectRegistry);
-            case "collection" ->
-                    toCollection(readArray(jsonObject.get("elements").getAsJsonArray(), objectRegistry), jsonObject.get("class_type").getAsString());
-            case "primitive" ->
-                    readPrimitive((JsonPrimitive) jsonObject.get("value"), jsonObject.get("class_type").getAsString());
-            default ->
-                    throw new IllegalStateException("Unexpected type: " + jsonElement.getAsJsonObject().get("type").getAsString());
+                yield objectRegistry.referenceReceived(id, () -> createNew(jsonObject.get("class_type").getAsString(), objectRegistry));
+            }
+            case "blob" -> objectRegistry.getBlobs().take(jsonObject.get("blobId").getAsInt());
+            case "primitive_array" ->
+                    unpackPrimitiveArray(Base64.getDecoder().decode(jsonObject.get("value").getAsString()), jsonObject.get("class_type").getAsString());
+            default -> throw new IllegalStateException("Unexpected type: " + jsonObject.get("type").getAsString());
         };
     }
 
-    private static Object createNew(String className) {
-        Class<?> clazz = classRemapping.get(className);
-        try {
-            Constructor<?> constructor = clazz.getConstructor();
-            constructor.setAccessible(true);
-            return constructor.newInstance();
-        } catch (NoSuchMethodException | InvocationTargetException | InstantiationException | IllegalAccessException e) {
-            throw new RuntimeException(e);
+    static Object createNew(String className, ObjectRegistry objectRegistry) {
+        Class<?> clazz = objectRegistry.getMirrorClass(className);
+        if (clazz == null) {
+            throw new IllegalStateException("No mirror class for " + className);
         }
+        return MirrorFactories.newMirror(clazz);
     }
 
     public static Object readPrimitive(JsonPrimitive value, String classType) {
@@ -75,33 +110,68 @@ public class ObjectUtil {
     }
 
     public static Collection<Object> toCollection(Object[] objects, String classType) {
+        Collection<Object> collection = newCollection(classType);
+        collection.addAll(Arrays.asList(objects));
+        return collection;
+    }
+
+    private static Collection<Object> newCollection(String classType) {
         try {
             Class<?> clazz = Class.forName(classType);
-            Collection<Object> collection;
             if (List.class.isAssignableFrom(clazz)) {
-                collection = new ArrayList<>();
-            } else if (Set.class.isAssignableFrom(clazz)) {
-                collection = new HashSet<>();
-            } else {
-                throw new IllegalStateException("Unexpected type: " + classType);
-            }
-            collection.addAll(Arrays.asList(objects));
-            return collection;
+                return new ArrayList<>();
+            }
+            if (Set.class.isAssignableFrom(clazz)) {
+                return new HashSet<>();
+            }
+            throw new IllegalStateException("Unexpected type: " + classType);
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
 
-    public static JsonElement serializeData(Object object, ObjectRegistry objectRegistry) {
-        Optional<Long> objectId = objectRegistry.getKey(object);
+    /**
+     * Values are always copied and never registered, so they skip the lookup in the registry, which would hash
+     * every element of a collection. This includes everything with a {@link ValueCodec}
+     */
+    public static boolean isValue(Object object) {
+        return object instanceof String || object instanceof Collection<?> || object.getClass().isArray() || Primitives.isWrapperType(object.getClass())
+                || ValueCodecs.find(object.getClass()) != null;
+    }
+
+    public static JsonElement serializeData(@Nullable Object object, ObjectRegistry objectRegistry) {
+        if (object == null) {
+            JsonObject parameterJson = new JsonObject();
+            parameterJson.addProperty("type", "null");
+            return parameterJson;
+        }
+        if (!Primitives.isWrapperType(object.getClass())) {
+            BackReferences references = objectRegistry.getSentReferences();
+            int index = references.indexOf(object);
+            if (index >= 0) {
+                JsonObject parameterJson = new JsonObject();
+                parameterJson.addProperty("type", "reference");
+                parameterJson.addProperty("index", index);
+                return parameterJson;
+            }
+            references.add(object);
+        }
+        Optional<Long> objectId = isValue(object) ? Optional.empty() : objectRegistry.getSentKey(object);
         if (objectId.isPresent()) {
             JsonObject parameterJsom = new JsonObject();
             parameterJsom.addProperty("objectId", objectId.get());
             parameterJsom.addProperty("type", "marked");
             parameterJsom.addProperty("class_type", object.getClass().getName());
+            objectRegistry.referenceSent(objectId.get());
             return parameterJsom;
         }
+        if (objectRegistry.getBlobs().isBlob(object)) {
+            JsonObject parameterJson = new JsonObject();
+            parameterJson.addProperty("type", "blob");
+            parameterJson.addProperty("blobId", objectRegistry.getBlobs().queue(object));
+            return parameterJson;
+        }
         if (object instanceof Object[] objectArray) {
             JsonArray elementJson = new JsonArray();
             for (Object element : objectArray) {
@@ -112,6 +182,13 @@ public class ObjectUtil {
             parameterJson.addProperty("type", "array");
             return parameterJson;
         }
+        if (object.getClass().isArray()) {
+            JsonObject parameterJson = new JsonObject();
+            parameterJson.addProperty("type", "primitive_array");
+            parameterJson.addProperty("value", Base64.getEncoder().encodeToString(packPrimitiveArray(object)));
+            parameterJson.addProperty("class_type", object.getClass().getComponentType().getName());
+            return parameterJson;
+        }
         if (object instanceof Collection<?> objectList) {
             JsonArray elementJson = new JsonArray();
             for (Object element : objectList) {
@@ -130,9 +207,113 @@ public class ObjectUtil {
             parameterJson.addProperty("class_type", object.getClass().getName());
             return parameterJson;
         }
+        ValueCodec<Object> codec = ValueCodecs.find(object.getClass());
+        if (codec != null) {
+            JsonArray elementJson = new JsonArray();
+            for (Object component : codec.encode(object)) {
+                elementJson.add(serializeData(component, objectRegistry));
+            }
+            JsonObject parameterJson = new JsonObject();
+            parameterJson.add("elements", elementJson);
+            parameterJson.addProperty("type", "value");
+            parameterJson.addProperty("class_type", codec.getName());
+            return parameterJson;
+        }
         throw new UnsupportedOperationException("Unknown object: " + object);
     }
 
+    /**
+     * Copy a primitive array into one big endian block, the same layout {@link BinaryObjectUtil} uses
+     */
+    public static byte[] packPrimitiveArray(Object array) {
+        if (array instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (array instanceof int[] ints) {
+            ByteBuffer buffer = ByteBuffer.allocate(ints.length * Integer.BYTES);
+            buffer.asIntBuffer().put(ints);
+            return buffer.array();
+        }
+        if (array instanceof long[] longs) {
+            ByteBuffer buffer = ByteBuffer.allocate(longs.length * Long.BYTES);
+            buffer.asLongBuffer().put(longs);
+            return buffer.array();
+        }
+        if (array instanceof double[] doubles) {
+            ByteBuffer buffer = ByteBuffer.allocate(doubles.length * Double.BYTES);
+            buffer.asDoubleBuffer().put(doubles);
+            return buffer.array();
+        }
+        if (array instanceof float[] floats) {
+            ByteBuffer buffer = ByteBuffer.allocate(floats.length * Float.BYTES);
+            buffer.asFloatBuffer().put(floats);
+            return buffer.array();
+        }
+        if (array instanceof short[] shorts) {
+            ByteBuffer buffer = ByteBuffer.allocate(shorts.length * Short.BYTES);
+            buffer.asShortBuffer().put(shorts);
+            return buffer.array();
+        }
+        if (array instanceof char[] chars) {
+            ByteBuffer buffer = ByteBuffer.allocate(chars.length * Character.BYTES);
+            buffer.asCharBuffer().put(chars);
+            return buffer.array();
+        }
+        if (array instanceof boolean[] booleans) {
+            byte[] bytes = new byte[booleans.length];
+            for (int i = 0; i < booleans.length; i++) {
+                bytes[i] = (byte) (booleans[i] ? 1 : 0);
+            }
+            return bytes;
+        }
+        throw new IllegalArgumentException("Unsupported array type: " + array.getClass());
+    }
+
+    public static Object unpackPrimitiveArray(byte[] bytes, String elementType) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return switch (elementType) {
+            case "byte" -> bytes;
+            case "int" -> {
+                int[] ints = new int[bytes.length / Integer.BYTES];
+                buffer.asIntBuffer().get(ints);
+                yield ints;
+            }
+            case "long" -> {
+                long[] longs = new long[bytes.length / Long.BYTES];
+                buffer.asLongBuffer().get(longs);
+                yield longs;
+            }
+            case "double" -> {
+                double[] doubles = new double[bytes.length / Double.BYTES];
+                buffer.asDoubleBuffer().get(doubles);
+                yield doubles;
+            }
+            case "float" -> {
+                float[] floats = new float[bytes.length / Float.BYTES];
+                buffer.asFloatBuffer().get(floats);
+                yield floats;
+            }
+            case "short" -> {
+                short[] shorts = new short[bytes.length / Short.BYTES];
+                buffer.asShortBuffer().get(shorts);
+                yield shorts;
+            }
+            case "char" -> {
+                char[] chars = new char[bytes.length / Character.BYTES];
+                buffer.asCharBuffer().get(chars);
+                yield chars;
+            }
+            case "boolean" -> {
+                boolean[] booleans = new boolean[bytes.length];
+                for (int i = 0; i < bytes.length; i++) {
+                    booleans[i] = bytes[i] != 0;
+                }
+                yield booleans;
+            }
+            default -> throw new IllegalStateException("Unexpected array type: " + elementType);
+        };
+    }
+
     public static JsonPrimitive createPrimitive(Object object) {
         if (Short.class.isAssignableFrom(object.getClass())) {
             return new JsonPrimitive((short) object);
@@ -0,0 +1,53 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import java.util.function.Function;
+
+/**
+ * Copies objects of a type by value instead of sending a reference to them. A value is sent as its components, which
+ * are encoded like any other object, so they can be registered objects or values themselves. Both sides register a
+ * codec under the same name, the receiving side decides what the components are turned into, see {@link ValueCodecs}
+ */
+public interface ValueCodec<T> {
+
+    /**
+     * @return The name both sides know the codec by, usually the name of the type on the server
+     */
+    String getName();
+
+    /**
+     * @return The type encoded by this codec, including its subtypes
+     */
+    Class<T> getType();
+
+    Object[] encode(T value);
+
+    T decode(Object[] components);
+
+    static <T> ValueCodec<T> of(Class<T> type, Function<T, Object[]> encoder, Function<Object[], T> decoder) {
+        return of(type.getName(), type, encoder, decoder);
+    }
+
+    static <T> ValueCodec<T> of(String name, Class<T> type, Function<T, Object[]> encoder, Function<Object[], T> decoder) {
+        return new ValueCodec<>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public Class<T> getType() {
+                return type;
+            }
+
+            @Override
+            public Object[] encode(T value) {
+                return encoder.apply(value);
+            }
+
+            @Override
+            public T decode(Object[] components) {
+                return decoder.apply(components);
+            }
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import org.jetbrains.annotations.Nullable;
+import org.mockbukkit.integrationtester.core.io.CollectionCursor;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link ValueCodec codecs} known to this side. Codecs for JDK types are built in, more are registered with
+ * {@link #register(ValueCodec)} or provided as a {@link ServiceLoader service} of {@link ValueCodec}
+ */
+public class ValueCodecs {
+
+    private static final Map<String, ValueCodec<?>> BY_NAME = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ValueCodec<?>> BY_TYPE = new ConcurrentHashMap<>();
+    // Every class looked up so far, including those without a codec, as serializing asks for each object
+    private static final Map<Class<?>, Optional<ValueCodec<?>>> LOOKUPS = new ConcurrentHashMap<>();
+
+    static {
+        register(ValueCodec.of(UUID.class, uuid -> new Object[]{uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()},
+                components -> new UUID((long) components[0], (long) components[1])));
+        register(CollectionCursor.CODEC);
+        for (ValueCodec<?> codec : ServiceLoader.load(ValueCodec.class, ValueCodecs.class.getClassLoader())) {
+            register(codec);
+        }
+    }
+
+    private ValueCodecs() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Register a codec, replacing any codec with the same name or type
+     */
+    public static void register(ValueCodec<?> codec) {
+        ValueCodec<?> previous = BY_NAME.put(codec.getName(), codec);
+        if (previous != null) {
+            BY_TYPE.remove(previous.getType(), previous);
+        }
+        BY_TYPE.put(codec.getType(), codec);
+        LOOKUPS.clear();
+    }
+
+    /**
+     * Remove a registered codec, nothing happens if it has been replaced meanwhile
+     */
+    public static void unregister(ValueCodec<?> codec) {
+        BY_NAME.remove(codec.getName(), codec);
+        BY_TYPE.remove(codec.getType(), codec);
+        LOOKUPS.clear();
+    }
+
+    /**
+     * @return The codec of the type or its closest supertype, classes are searched before interfaces
+     */
+    public static @Nullable ValueCodec<Object> find(Class<?> type) {
+        return (ValueCodec<Object>) LOOKUPS.computeIfAbsent(type, key -> Optional.ofNullable(search(key))).orElse(null);
+    }
+
+    private static @Nullable ValueCodec<?> search(Class<?> type) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            ValueCodec<?> codec = BY_TYPE.get(current);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Class<?> implemented : current.getInterfaces()) {
+                ValueCodec<?> codec = search(implemented);
+                if (codec != null) {
+                    return codec;
+                }
+            }
+        }
+        return null;
+    }
+
+    public static ValueCodec<Object> get(String name) {
+        ValueCodec<?> codec = BY_NAME.get(name);
+        if (codec == null) {
+            throw new IllegalStateException("No value codec registered for " + name);
+        }
+        return (ValueCodec<Object>) codec;
+    }
+}
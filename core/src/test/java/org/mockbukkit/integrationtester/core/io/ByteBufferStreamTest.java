@@ -0,0 +1,40 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ByteBufferStreamTest {
+
+    @Test
+    void growsPastPooledCapacity() throws IOException {
+        ByteBufferOutputStream outputStream = new ByteBufferOutputStream();
+        try (DataOutputStream dataOutputStream = new DataOutputStream(outputStream)) {
+            for (int i = 0; i < BufferPool.DEFAULT_CAPACITY; i++) {
+                dataOutputStream.writeInt(i);
+            }
+        }
+        assertEquals(BufferPool.DEFAULT_CAPACITY * Integer.BYTES, outputStream.size());
+        DataInputStream dataInputStream = new DataInputStream(new ByteBufferInputStream(outputStream.getBuffer().flip()));
+        for (int i = 0; i < BufferPool.DEFAULT_CAPACITY; i++) {
+            assertEquals(i, dataInputStream.readInt());
+        }
+        assertEquals(-1, dataInputStream.read());
+    }
+
+    @Test
+    void releasedBuffersAreReused() {
+        ByteBuffer buffer = BufferPool.acquire(16);
+        buffer.putInt(42);
+        BufferPool.release(buffer);
+        ByteBuffer reused = BufferPool.acquire(16);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+    }
+}
@@ -0,0 +1,57 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassIndexTest {
+
+    private static ClassIndex write(Map<String, String> remapping) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ClassIndex.write(remapping, output);
+        return new ClassIndex(output.toByteArray());
+    }
+
+    @Test
+    void resolveMirrorClasses() throws IOException {
+        ClassIndex classIndex = write(Map.of(
+                "org.bukkit.World", "java.util.ArrayList",
+                "org.bukkit.entity.Player", "java.lang.String"
+        ));
+        assertEquals(2, classIndex.size());
+        assertSame(ArrayList.class, classIndex.getMirrorClass("org.bukkit.World"));
+        assertSame(String.class, classIndex.getMirrorClass("org.bukkit.entity.Player"));
+        assertNull(classIndex.getMirrorClass("org.bukkit.Server"));
+    }
+
+    @Test
+    void equalHashesAreToldApart() throws IOException {
+        // "Aa" and "BB" share their hash code
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        ClassIndex classIndex = write(Map.of("Aa", "first", "BB", "second", "C", "third"));
+        assertEquals("first", classIndex.getMirrorClassName("Aa"));
+        assertEquals("second", classIndex.getMirrorClassName("BB"));
+        assertEquals("third", classIndex.getMirrorClassName("C"));
+        assertNull(classIndex.getMirrorClassName("Ab"));
+    }
+
+    @Test
+    void classesThatCanNotBeLoadedAreSkipped() throws IOException {
+        ClassIndex classIndex = write(Map.of("org.bukkit.World", "org.example.Missing", "org.bukkit.Server", "java.util.ArrayList"));
+        assertDoesNotThrow(classIndex::preloadClasses);
+        assertSame(ArrayList.class, classIndex.getMirrorClass("org.bukkit.Server"));
+        assertThrows(RuntimeException.class, () -> classIndex.getMirrorClass("org.bukkit.World"));
+    }
+
+    @Test
+    void emptyIndex() throws IOException {
+        ClassIndex classIndex = write(Map.of());
+        assertEquals(0, classIndex.size());
+        assertNull(classIndex.getMirrorClass("org.bukkit.World"));
+    }
+}
@@ -6,12 +6,14 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class FieldFetchCallTest {
     private PipedInputStream input;
     private PipedOutputStream output;
+    private final ObjectRegistry registry = new ObjectRegistry(Map.of());
 
     @BeforeEach
     void setup() throws IOException {
@@ -21,9 +23,9 @@ class FieldFetchCallTest {
 
     @Test
     void sendAndReceive() {
-        FieldFetchCall target = new FieldFetchCall("hello", "World");
-        target.send(output);
-        FieldFetchCall created = FieldFetchCall.receive(input);
+        FieldFetchCall target = new FieldFetchCall(42, null);
+        target.send(output, registry);
+        FieldFetchCall created = (FieldFetchCall) PacketFactory.fromStream(input, registry);
         assertEquals(target, created);
     }
 }
\ No newline at end of file
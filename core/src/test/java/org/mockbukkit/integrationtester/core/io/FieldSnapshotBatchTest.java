@@ -0,0 +1,36 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldSnapshotBatchTest {
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void sendAndReceive(PacketFormat format) throws IOException {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        Object first = new Object();
+        Object second = new Object();
+        registry.putObject(7L, first);
+        registry.putObject(8L, second);
+        FieldSnapshotBatch target = new FieldSnapshotBatch(
+                new FieldSnapshotCall(new int[]{3, 300}, first),
+                new FieldSnapshotCall(new int[]{0}, second)
+        );
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        target.send(output, registry, format);
+        FieldSnapshotBatch created = (FieldSnapshotBatch) PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, format);
+        assertEquals(target.snapshots().length, created.snapshots().length);
+        for (int i = 0; i < target.snapshots().length; i++) {
+            assertArrayEquals(target.snapshots()[i].fieldIds(), created.snapshots()[i].fieldIds());
+            assertSame(target.snapshots()[i].owner(), created.snapshots()[i].owner());
+        }
+    }
+}
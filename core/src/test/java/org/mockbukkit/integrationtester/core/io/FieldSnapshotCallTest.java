@@ -0,0 +1,28 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FieldSnapshotCallTest {
+
+    private final ObjectRegistry registry = new ObjectRegistry(Map.of());
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void sendAndReceive(PacketFormat format) {
+        Object owner = new Object();
+        registry.putObject(7L, owner);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new FieldSnapshotCall(new int[]{3, 300, 0}, owner).send(output, registry, format);
+        FieldSnapshotCall created = (FieldSnapshotCall) PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, format);
+        assertArrayEquals(new int[]{3, 300, 0}, created.fieldIds());
+        assertSame(owner, created.owner());
+    }
+}
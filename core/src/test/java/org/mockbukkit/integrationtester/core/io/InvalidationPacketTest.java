@@ -0,0 +1,23 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class InvalidationPacketTest {
+
+    @Test
+    void writeAndRead() throws IOException {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        InvalidationPacket packet = new InvalidationPacket(new long[]{4L, -3L, 1L << 40});
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        packet.send(output, registry, PacketFormat.BINARY);
+        InvalidationPacket created = (InvalidationPacket) PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, PacketFormat.BINARY);
+        assertArrayEquals(packet.keys(), created.keys());
+    }
+}
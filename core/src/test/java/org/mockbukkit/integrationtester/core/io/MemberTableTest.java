@@ -0,0 +1,31 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MemberTableTest {
+
+    private final MemberTable memberTable = new MemberTable(new String[]{
+            "java.lang.String#substring(int,int)",
+            "java.util.ArrayList#<init>(int)",
+            "java.lang.Integer#MAX_VALUE",
+            "java.lang.String#join(java.lang.CharSequence,[Ljava.lang.CharSequence;)"
+    });
+
+    @Test
+    void resolveMembers() throws ReflectiveOperationException {
+        assertEquals(String.class.getMethod("substring", int.class, int.class), memberTable.getMember(0));
+        assertEquals(ArrayList.class.getConstructor(int.class), memberTable.getMember(1));
+        assertEquals(Integer.class.getField("MAX_VALUE"), memberTable.getMember(2));
+        assertEquals(String.class.getMethod("join", CharSequence.class, CharSequence[].class), memberTable.getMember(3));
+    }
+
+    @Test
+    void idsBySignature() {
+        assertEquals(1, memberTable.getId("java.util.ArrayList#<init>(int)"));
+        assertEquals(-1, memberTable.getId("java.lang.String#length()"));
+    }
+}
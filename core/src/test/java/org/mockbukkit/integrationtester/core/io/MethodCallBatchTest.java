@@ -0,0 +1,35 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodCallBatchTest {
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void sendAndReceive(PacketFormat format) throws IOException {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        Object object = new Object();
+        registry.putObject(0L, object);
+        MethodCallBatch target = new MethodCallBatch(
+                new MethodCall(12, object, 20D),
+                new MethodCall(34, object, "STONE")
+        );
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        target.send(output, registry, format);
+        MethodCallBatch created = (MethodCallBatch) PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, format);
+        assertEquals(target.calls().length, created.calls().length);
+        for (int i = 0; i < target.calls().length; i++) {
+            assertEquals(target.calls()[i].methodId(), created.calls()[i].methodId());
+            assertSame(object, created.calls()[i].object());
+            assertArrayEquals(target.calls()[i].parameters(), created.calls()[i].parameters());
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.io.PipedOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -19,7 +20,7 @@ class MethodCallTest {
 
     private PipedInputStream input;
     private PipedOutputStream output;
-    private static final ObjectRegistry registry1 = new ObjectRegistry();
+    private static final ObjectRegistry registry1 = new ObjectRegistry(Map.of());
 
     @BeforeEach
     void setup() throws IOException {
@@ -31,11 +32,11 @@ class MethodCallTest {
     @MethodSource("methodCalls")
     void sendAndReceive(MethodCall methodCall) throws IOException {
         methodCall.send(output, registry1);
-        MethodCall output = MethodCall.receive(input, registry1);
-        assertEquals(methodCall.methodName(), output.methodName());
-        assertEquals(methodCall.owner(), output.owner());
+        MethodCall output = (MethodCall) PacketFactory.fromStream(input, registry1);
+        assertEquals(methodCall.methodId(), output.methodId());
         assertTrue(Arrays.deepEquals(methodCall.parameters(), output.parameters()));
         assertSame(methodCall.object(), output.object());
+        assertEquals(methodCall.resultId(), output.resultId());
     }
 
     public static Stream<Arguments> methodCalls() {
@@ -50,11 +51,12 @@ class MethodCallTest {
         testObjects.add(object3);
         testObjects.add(object2);
         return Stream.of(
-                Arguments.arguments(new MethodCall("hello", "world", object1, object2, object3)),
-                Arguments.arguments(new MethodCall("hello", "world!", object1, objects)),
-                Arguments.arguments(new MethodCall("hello", "world!", object1, testObjects)),
-                Arguments.arguments(new MethodCall("hello", "world!", object1, true)),
-                Arguments.arguments(new MethodCall("hello", "world!", null, true))
+                Arguments.arguments(new MethodCall(0, object1, object2, object3)),
+                Arguments.arguments(new MethodCall(1, object1, objects)),
+                Arguments.arguments(new MethodCall(1, object1, testObjects)),
+                Arguments.arguments(new MethodCall(1, object1, true)),
+                Arguments.arguments(new MethodCall(1, null, true)),
+                Arguments.arguments(new MethodCall(2, ObjectManager.CLIENT.nextId(), object1, new Object[]{3}))
         );
     }
 
@@ -1,30 +1,98 @@
 package org.mockbukkit.integrationtester.core.io;
 
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockbukkit.integrationtester.core.util.ValueCodec;
+import org.mockbukkit.integrationtester.core.util.ValueCodecs;
 
-import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class MethodReturnCallTest {
 
-    private PipedInputStream input;
-    private PipedOutputStream output;
+    private static final ValueCodec<Position> POSITIONS = ValueCodec.of(Position.class, position -> new Object[]{position.world(), position.x()},
+            components -> new Position(components[0], (double) components[1]));
 
-    @BeforeEach
-    void setup() throws IOException {
-        this.input = new PipedInputStream();
-        this.output = new PipedOutputStream(input);
+    private final ObjectRegistry registry = new ObjectRegistry(Map.of());
+
+    @AfterEach
+    void teardown() {
+        ValueCodecs.unregister(POSITIONS);
+    }
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void sendAndReceive(PacketFormat format) {
+        MethodReturnCall target = new MethodReturnCall("Hello World");
+        assertEquals(target, roundTrip(target, format));
+    }
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void nullValues(PacketFormat format) {
+        assertNull(roundTrip(new MethodReturnCall(null), format).value());
+        assertArrayEquals(new Object[]{null, "STONE", null}, (Object[]) roundTrip(new MethodReturnCall(new Object[]{null, "STONE", null}), format).value());
+    }
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void primitiveArrays(PacketFormat format) {
+        Object[] arrays = {
+                new byte[]{1, -2, 3}, new short[]{4, -5}, new int[]{6, Integer.MIN_VALUE}, new long[]{Long.MAX_VALUE, 7},
+                new float[]{8.5F}, new double[]{9.5D, -0D}, new char[]{'a', '\u00e4'}, new boolean[]{true, false, true}, new int[0]
+        };
+        Object[] created = (Object[]) roundTrip(new MethodReturnCall(arrays), format).value();
+        assertEquals(arrays.length, created.length);
+        for (int i = 0; i < arrays.length; i++) {
+            assertEquals(arrays[i].getClass(), created[i].getClass());
+        }
+        assertArrayEquals(arrays, created);
+    }
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void repeatedValuesAreShared(PacketFormat format) {
+        Object world = new Object();
+        registry.putObject(1L, world);
+        int[] position = {1, 64, 1};
+        Object[] created = (Object[]) roundTrip(new MethodReturnCall(new Object[]{world, position, world, position, "STONE", "STONE"}), format).value();
+        assertSame(world, created[0]);
+        assertSame(world, created[2]);
+        assertArrayEquals(position, (int[]) created[1]);
+        assertSame(created[1], created[3]);
+        assertSame(created[4], created[5]);
+    }
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void valuesAreCopied(PacketFormat format) {
+        ValueCodecs.register(POSITIONS);
+        Object world = new Object();
+        registry.putObject(2L, world);
+        Position position = new Position(world, 1.5);
+        UUID uuid = UUID.randomUUID();
+        Object[] created = (Object[]) roundTrip(new MethodReturnCall(new Object[]{position, uuid, position}), format).value();
+        assertEquals(position, created[0]);
+        assertEquals(uuid, created[1]);
+        assertSame(created[0], created[2]);
+        assertFalse(registry.hasObject(position));
+    }
+
+    private record Position(Object world, double x) {
     }
 
-    @Test
-    void sendAndReceive() {
-        MethodReturnCall target = new MethodReturnCall(20, "Hello World");
-        target.send(output);
-        MethodReturnCall created = MethodReturnCall.receive(input);
-        assertEquals(target, created);
+    private MethodReturnCall roundTrip(MethodReturnCall methodReturnCall, PacketFormat format) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        methodReturnCall.send(output, registry, format);
+        return (MethodReturnCall) PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, format);
     }
-}
\ No newline at end of file
+}
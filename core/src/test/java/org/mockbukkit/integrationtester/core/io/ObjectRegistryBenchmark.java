@@ -0,0 +1,79 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+
+import java.util.Map;
+
+/**
+ * Compares the registry against the {@link HashBiMap} it replaced, for registries of different sizes. Run the main
+ * method, the timings are too noisy to assert on in a test
+ */
+public class ObjectRegistryBenchmark {
+
+    private static final int[] SIZES = {10_000, 100_000, 1_000_000};
+    // Operations per size, small registries get more rounds so the JIT has warmed up as well
+    private static final int OPERATIONS = 20_000_000;
+
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            Entity[] entities = new Entity[size];
+            for (int i = 0; i < size; i++) {
+                entities[i] = new Entity(i);
+            }
+            int rounds = Math.max(10, OPERATIONS / size);
+            // The first half of the rounds only warms up
+            long biMapTime = 0;
+            long registryTime = 0;
+            for (int round = 0; round < rounds; round++) {
+                long biMap = timeBiMap(entities);
+                long registry = timeRegistry(entities);
+                if (round >= rounds / 2) {
+                    biMapTime += biMap;
+                    registryTime += registry;
+                }
+            }
+            int operations = size * 3 * (rounds - rounds / 2);
+            System.out.printf("%,9d objects: HashBiMap %6.1f ns/op, ObjectRegistry %6.1f ns/op%n",
+                    size, (double) biMapTime / operations, (double) registryTime / operations);
+        }
+    }
+
+    private static long timeBiMap(Entity[] entities) {
+        long start = System.nanoTime();
+        BiMap<Long, Object> objects = HashBiMap.create();
+        for (int i = 0; i < entities.length; i++) {
+            objects.put((long) i, entities[i]);
+        }
+        long check = 0;
+        for (int i = 0; i < entities.length; i++) {
+            check += objects.get((long) i).hashCode();
+            check += objects.inverse().get(entities[i]);
+        }
+        return System.nanoTime() - start + (check == 42 ? 1 : 0);
+    }
+
+    private static long timeRegistry(Entity[] entities) {
+        long start = System.nanoTime();
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        for (int i = 0; i < entities.length; i++) {
+            registry.putObject(i, entities[i]);
+        }
+        long check = 0;
+        for (int i = 0; i < entities.length; i++) {
+            check += registry.<Entity>getObject(i).hashCode();
+            check += registry.getKey(entities[i]).orElseThrow();
+        }
+        return System.nanoTime() - start + (check == 42 ? 1 : 0);
+    }
+
+    /**
+     * Like most server objects, hashes its contents instead of its identity
+     */
+    private record Entity(int id, String name, double x, double y, double z) {
+
+        Entity(int id) {
+            this(id, "entity" + id, id * 0.5, 64, -id * 0.25);
+        }
+    }
+}
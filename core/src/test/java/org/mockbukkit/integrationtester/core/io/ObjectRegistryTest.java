@@ -0,0 +1,104 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectRegistryTest {
+
+    @Test
+    void forgetsObjectsOnceAllSentReferencesAreReleased() {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        Object object = new Object();
+        registry.putObject(1L, object);
+        for (int i = 0; i < 2; i++) {
+            new MethodReturnCall(object).send(new ByteArrayOutputStream(), registry, PacketFormat.BINARY);
+        }
+        registry.release(1L, 1);
+        assertSame(object, registry.getObject(1L));
+        registry.release(1L, 1);
+        assertFalse(registry.hasKey(1L));
+        assertFalse(registry.hasObject(object));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void releasesCollectedMirrors() throws InterruptedException {
+        ObjectRegistry registry = new ObjectRegistry(Map.of(), true);
+        Object mirror = registry.referenceReceived(5L, Object::new);
+        assertSame(mirror, registry.referenceReceived(5L, Object::new));
+        assertEquals(5L, registry.getKey(mirror).orElseThrow());
+        mirror = null;
+        ReleasePacket releases = registry.pollReleases();
+        for (int i = 0; i < 100 && releases.keys().length == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            releases = registry.pollReleases();
+        }
+        assertArrayEquals(new long[]{5L}, releases.keys());
+        assertArrayEquals(new int[]{2}, releases.references());
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void forgottenMirrorsAreReleasedOnce() {
+        ObjectRegistry registry = new ObjectRegistry(Map.of(), true);
+        Object mirror = registry.referenceReceived(6L, Object::new);
+        registry.forget(6L);
+        assertFalse(registry.hasKey(6L));
+        assertFalse(registry.hasObject(mirror));
+        ReleasePacket releases = registry.pollReleases();
+        assertArrayEquals(new long[]{6L}, releases.keys());
+        assertArrayEquals(new int[]{1}, releases.references());
+        assertEquals(0, registry.pollReleases().keys().length);
+    }
+
+    @Test
+    void closingScopeForgetsItsObjects() {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        Object outer = new Object();
+        Object inner = new Object();
+        registry.putObject(1L, outer);
+        registry.openScope();
+        registry.putObject(2L, inner);
+        registry.openScope();
+        assertSame(outer, registry.getObject(1L));
+        assertEquals(2L, registry.getKey(inner).orElseThrow());
+        registry.closeScope();
+        registry.closeScope();
+        assertEquals(0, registry.getScopeDepth());
+        assertFalse(registry.hasKey(2L));
+        assertFalse(registry.hasObject(inner));
+        assertSame(outer, registry.getObject(1L));
+        assertThrows(IllegalStateException.class, registry::closeScope);
+    }
+
+    @Test
+    void forgettingAllObjectsKeepsScopesOpen() {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        registry.putObject(1L, new Object());
+        registry.openScope();
+        registry.putObject(2L, new Object());
+        registry.forgetAll();
+        assertEquals(0, registry.size());
+        assertEquals(1, registry.getScopeDepth());
+        registry.putObject(3L, new Object());
+        registry.closeScope();
+        assertFalse(registry.hasKey(3L));
+    }
+
+    @Test
+    void invalidatedObjectsAreForgottenRegardlessOfReferences() {
+        ObjectRegistry registry = new ObjectRegistry(Map.of(), true);
+        Object mirror = registry.referenceReceived(7L, Object::new);
+        registry.referenceReceived(7L, Object::new);
+        registry.invalidate(7L);
+        assertFalse(registry.hasKey(7L));
+        assertFalse(registry.hasObject(mirror));
+        assertTrue(registry.isInvalidated(mirror));
+        assertFalse(registry.isInvalidated(new Object()));
+    }
+}
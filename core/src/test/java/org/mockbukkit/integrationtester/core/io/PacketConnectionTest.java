@@ -0,0 +1,349 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockbukkit.integrationtester.core.util.ValueCodec;
+import org.mockbukkit.integrationtester.core.util.ValueCodecs;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PacketConnectionTest {
+
+    private final ObjectRegistry registry = new ObjectRegistry(Map.of());
+    private PacketConnection client;
+    private PacketConnection server;
+
+    @BeforeEach
+    void setup() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Socket clientSocket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+            this.server = new PacketConnection(serverSocket.accept(), registry);
+            this.client = new PacketConnection(clientSocket, registry);
+        }
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void severalPacketsOverOneConnection() throws IOException {
+        handshake(PacketConnection.COMPRESSION_DISABLED, 64);
+        assertEquals(PacketConnection.COMPRESSION_DISABLED, server.getCompressionThreshold());
+        for (int i = 0; i < 3; i++) {
+            client.send(i, new MethodReturnCall("Hello World " + i));
+            client.send(i, new MethodReturnCall(i));
+            client.flush();
+            assertEquals(new MethodReturnCall("Hello World " + i), server.decode(server.receiveFrame()));
+            assertEquals(new MethodReturnCall(i), server.decode(server.receiveFrame()));
+        }
+    }
+
+    @Test
+    void largeFramesAreCompressed() throws IOException {
+        handshake(64, 256);
+        assertEquals(256, server.getCompressionThreshold());
+        String[] lines = new String[200];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "Line " + i;
+        }
+        client.send(0, new MethodReturnCall("Small"));
+        client.send(1, new MethodReturnCall(lines));
+        client.flush();
+        assertEquals(new MethodReturnCall("Small"), server.decode(server.receiveFrame()));
+        Frame frame = server.receiveFrame();
+        assertEquals(1, frame.requestId());
+        assertArrayEquals(lines, (Object[]) ((MethodReturnCall) server.decode(frame)).value());
+        assertTrue(client.getBytesSaved() > 0);
+    }
+
+    @Test
+    void thresholdsTooSmallToSaveAnythingAreIgnored() throws IOException {
+        handshake(0, 2);
+        assertEquals(2, server.getCompressionThreshold());
+        client.send(0, new MethodReturnCall(null));
+        client.send(1, new MethodReturnCall("Hello World"));
+        client.flush();
+        assertEquals(new MethodReturnCall(null), server.decode(server.receiveFrame()));
+        assertEquals(new MethodReturnCall("Hello World"), server.decode(server.receiveFrame()));
+    }
+
+    @Test
+    void clientRefusesAServerOfAnotherVersion() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             PacketConnection connection = new PacketConnection(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), registry);
+             Socket otherServer = serverSocket.accept()) {
+            DataOutputStream output = new DataOutputStream(otherServer.getOutputStream());
+            output.writeByte(PacketVersion.VERSION + 1);
+            output.flush();
+            assertThrows(IllegalStateException.class, () -> connection.clientHandshake(256));
+        }
+    }
+
+    @Test
+    void serverRefusesAClientOfAnotherVersion() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket otherClient = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+             PacketConnection connection = new PacketConnection(serverSocket.accept(), registry)) {
+            DataOutputStream output = new DataOutputStream(otherClient.getOutputStream());
+            output.writeByte(PacketVersion.VERSION + 1);
+            output.writeInt(256);
+            output.writeByte(PacketFormat.BINARY.ordinal());
+            output.flush();
+            assertThrows(IllegalStateException.class, () -> connection.serverHandshake(256));
+            assertEquals(PacketVersion.VERSION, new DataInputStream(otherClient.getInputStream()).readByte());
+        }
+    }
+
+    @Test
+    void formatIsPickedByTheClient() throws IOException {
+        handshake(PacketConnection.COMPRESSION_DISABLED, PacketConnection.COMPRESSION_DISABLED, PacketFormat.JSON);
+        assertEquals(PacketFormat.JSON, server.getFormat());
+        // Unaffected by what other connections of the process use
+        assertEquals(PacketFormat.BINARY, PacketFactory.getFormat());
+        client.send(0, new MethodReturnCall(List.of("Hello", "World")));
+        client.flush();
+        assertEquals(new MethodReturnCall(List.of("Hello", "World")), server.decode(server.receiveFrame()));
+    }
+
+    @Test
+    void framesAfterOneWithAStaleIdStillDecode() throws IOException {
+        handshake(PacketConnection.COMPRESSION_DISABLED, PacketConnection.COMPRESSION_DISABLED);
+        Object target = new Object();
+        Mirrored first = new Mirrored();
+        Mirrored second = new Mirrored();
+        registry.putObject(1, target);
+        registry.putObject(2, first);
+        registry.putObject(3, second);
+        // The first frame defines the class name symbol after the target, the second one only refers to it
+        client.send(1, new MethodCall(0, target, first));
+        client.send(2, new MethodCall(0, null, second));
+        client.flush();
+        // Got rid of while the first call was in flight
+        registry.invalidate(1);
+        assertThrows(IllegalStateException.class, () -> server.decode(server.receiveFrame()));
+        assertSame(second, ((MethodCall) server.decode(server.receiveFrame())).parameters()[0]);
+    }
+
+    @Test
+    void referencesOfPacketsThatFailToEncodeAreNotCounted() throws IOException {
+        handshake(PacketConnection.COMPRESSION_DISABLED, PacketConnection.COMPRESSION_DISABLED);
+        Object object = new Object();
+        registry.putObject(1, object);
+        client.send(1, new MethodReturnCall(object));
+        // Fails on the second element, after the first one was written
+        assertThrows(UnsupportedOperationException.class, () -> client.send(2, new MethodReturnCall(new Object[]{object, new Object()})));
+        registry.release(1, 1);
+        assertFalse(registry.hasKey(1));
+    }
+
+    @Test
+    void objectsAreRegisteredWhenSent() throws IOException {
+        ObjectRegistry owner = new ObjectRegistry(Map.of());
+        List<Long> registered = new ArrayList<>();
+        owner.registerWhenSent(ObjectManager.SERVER, (key, object) -> registered.add(key));
+        ObjectRegistry mirrors = new ObjectRegistry(Map.of(Owned.class.getName(), Mirrored.class), true);
+        Owned first = new Owned();
+        Owned second = new Owned();
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             PacketConnection sending = new PacketConnection(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), owner);
+             PacketConnection receiving = new PacketConnection(serverSocket.accept(), mirrors)) {
+            // Neither element was registered before, like the players of a world
+            sending.send(0, new MethodReturnCall(List.of(first, second)));
+            sending.send(1, new MethodReturnCall(new Object[]{second}));
+            sending.flush();
+            List<?> list = (List<?>) ((MethodReturnCall) receiving.decode(receiving.receiveFrame())).value();
+            Object[] array = (Object[]) ((MethodReturnCall) receiving.decode(receiving.receiveFrame())).value();
+            assertEquals(List.of(owner.getKey(first).orElseThrow(), owner.getKey(second).orElseThrow()), registered);
+            assertTrue(list.get(0) instanceof Mirrored);
+            assertSame(mirrors.getObject(registered.get(0)), list.get(0));
+            assertSame(list.get(1), array[0]);
+        }
+    }
+
+    @Test
+    void pagedElementsAreRegisteredWhenSent() throws IOException {
+        ObjectRegistry owner = new ObjectRegistry(Map.of());
+        owner.registerWhenSent(ObjectManager.SERVER, (key, object) -> {
+        });
+        ObjectRegistry mirrors = new ObjectRegistry(Map.of(Owned.class.getName(), Mirrored.class), true);
+        Object[] elements = {new Owned(), new Owned(), new Owned()};
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             PacketConnection sending = new PacketConnection(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), owner);
+             PacketConnection receiving = new PacketConnection(serverSocket.accept(), mirrors)) {
+            owner.putObject(1, elements);
+            sending.send(0, new MethodReturnCall(new CollectionCursor(1, elements.length, false, Arrays.copyOf(elements, 2))));
+            sending.send(1, new MethodReturnCall(Arrays.copyOfRange(elements, 2, 3)));
+            sending.flush();
+            CollectionCursor cursor = (CollectionCursor) ((MethodReturnCall) receiving.decode(receiving.receiveFrame())).value();
+            Object[] page = (Object[]) ((MethodReturnCall) receiving.decode(receiving.receiveFrame())).value();
+            for (int i = 0; i < elements.length; i++) {
+                Object mirror = i < 2 ? cursor.firstPage()[i] : page[i - 2];
+                assertSame(mirrors.getObject(owner.getKey(elements[i]).orElseThrow()), mirror);
+            }
+        }
+    }
+
+    @Test
+    void valueComponentsAreRegisteredWhenSent() throws IOException {
+        ValueCodec<Place> places = ValueCodec.of(Place.class, place -> new Object[]{place.world(), place.x()},
+                components -> new Place(components[0], (double) components[1]));
+        ValueCodecs.register(places);
+        ObjectRegistry owner = new ObjectRegistry(Map.of());
+        owner.registerWhenSent(ObjectManager.SERVER, (key, object) -> {
+        });
+        ObjectRegistry mirrors = new ObjectRegistry(Map.of(Owned.class.getName(), Mirrored.class), true);
+        Owned world = new Owned();
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             PacketConnection sending = new PacketConnection(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), owner);
+             PacketConnection receiving = new PacketConnection(serverSocket.accept(), mirrors)) {
+            // Like a location in a world nothing registered yet, and one without a world
+            sending.send(0, new MethodReturnCall(new Object[]{new Place(world, 1.5), new Place(null, 2.5)}));
+            sending.flush();
+            Object[] received = (Object[]) ((MethodReturnCall) receiving.decode(receiving.receiveFrame())).value();
+            assertSame(mirrors.getObject(owner.getKey(world).orElseThrow()), ((Place) received[0]).world());
+            assertNull(((Place) received[1]).world());
+            assertEquals(2.5, ((Place) received[1]).x());
+        } finally {
+            ValueCodecs.unregister(places);
+        }
+    }
+
+    @Test
+    void largePayloadsAreStreamedAsBlobs(@TempDir Path directory) throws IOException {
+        handshake(PacketConnection.COMPRESSION_DISABLED, PacketConnection.COMPRESSION_DISABLED);
+        byte[] bytes = new byte[BlobTransfer.THRESHOLD * 3 + 5];
+        Arrays.fill(bytes, (byte) 7);
+        String string = "a".repeat(BlobTransfer.THRESHOLD + 1);
+        Path path = Files.write(directory.resolve("plugin.jar"), bytes);
+        // Read concurrently, the blobs do not fit in the socket buffers
+        CompletableFuture<Packet> received = CompletableFuture.supplyAsync(() -> {
+            try {
+                return server.decode(server.receiveFrame());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        client.send(0, new MethodReturnCall(new Object[]{bytes, string, registry.getBlobs().upload(path.toFile())}));
+        client.flush();
+        Object[] values = (Object[]) ((MethodReturnCall) received.join()).value();
+        assertArrayEquals(bytes, (byte[]) values[0]);
+        assertEquals(string, values[1]);
+        File file = (File) values[2];
+        assertEquals("plugin.jar", file.getName());
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    void receivedFilesAreDeletedOnClose(@TempDir Path directory) throws IOException {
+        handshake(PacketConnection.COMPRESSION_DISABLED, PacketConnection.COMPRESSION_DISABLED);
+        Path first = Files.write(directory.resolve("config.yml"), new byte[]{1});
+        Path second = Files.write(Files.createDirectory(directory.resolve("other")).resolve("config.yml"), new byte[]{2});
+        client.send(0, new MethodReturnCall(new Object[]{registry.getBlobs().upload(first), registry.getBlobs().upload(second)}));
+        client.flush();
+        Object[] files = (Object[]) ((MethodReturnCall) server.decode(server.receiveFrame())).value();
+        // Both keep their name
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes((Path) files[0]));
+        assertArrayEquals(new byte[]{2}, Files.readAllBytes((Path) files[1]));
+        server.close();
+        assertFalse(Files.exists((Path) files[0]));
+        assertFalse(Files.exists(((Path) files[0]).getParent().getParent()));
+    }
+
+    @Test
+    void blobFileNamesCanNotLeaveTheirDirectory() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket peer = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+             PacketConnection connection = new PacketConnection(serverSocket.accept(), registry)) {
+            DataOutputStream output = new DataOutputStream(peer.getOutputStream());
+            // A file blob as PacketConnection writes it, named by a peer that is up to no good
+            output.writeInt(0x40000000);
+            output.writeInt(0);
+            output.writeByte(3);
+            output.writeUTF("../../escaped.txt");
+            output.writeLong(1);
+            output.writeByte(1);
+            output.flush();
+            assertThrows(IOException.class, connection::receiveFrame);
+        }
+    }
+
+    @Test
+    void blobsOfFramesThatFailToDecodeAreDropped() throws IOException {
+        handshake(PacketConnection.COMPRESSION_DISABLED, PacketConnection.COMPRESSION_DISABLED);
+        CompletableFuture<Frame> received = CompletableFuture.supplyAsync(() -> {
+            try {
+                return server.receiveFrame();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        client.send(0, new MethodReturnCall(new byte[BlobTransfer.THRESHOLD]));
+        client.flush();
+        Frame frame = received.join();
+        assertEquals(1, frame.blobIds().length);
+        ByteBuffer unknownPacket = ByteBuffer.allocate(Short.BYTES).putShort(Short.MAX_VALUE).flip();
+        assertThrows(IllegalArgumentException.class, () -> server.decode(new Frame(frame.requestId(), unknownPacket, frame.blobIds())));
+        assertThrows(IllegalStateException.class, () -> registry.getBlobs().take(frame.blobIds()[0]));
+    }
+
+    @Test
+    void filesAreOnlyStreamedWhenUploaded(@TempDir Path directory) throws IOException {
+        Path path = Files.write(directory.resolve("config.yml"), new byte[]{1});
+        assertFalse(registry.getBlobs().isBlob(path));
+        assertFalse(registry.getBlobs().isBlob(path.toFile()));
+        assertTrue(registry.getBlobs().isBlob(registry.getBlobs().upload(path)));
+        assertThrows(IllegalArgumentException.class, () -> registry.getBlobs().upload(directory));
+    }
+
+    private static class Mirrored {
+    }
+
+    private static class Owned {
+    }
+
+    private record Place(Object world, double x) {
+    }
+
+    private void handshake(int serverThreshold, int clientThreshold) throws IOException {
+        handshake(serverThreshold, clientThreshold, PacketFormat.BINARY);
+    }
+
+    private void handshake(int serverThreshold, int clientThreshold, PacketFormat format) throws IOException {
+        CompletableFuture<Void> serverHandshake = CompletableFuture.runAsync(() -> {
+            try {
+                server.serverHandshake(serverThreshold);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        client.clientHandshake(clientThreshold, format);
+        serverHandshake.join();
+    }
+}
@@ -0,0 +1,40 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCallTest {
+
+    private final ObjectRegistry registry = new ObjectRegistry(Map.of());
+
+    @Test
+    void writeAndRead() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new PageCall(-12L, 256, 128).send(output, registry, PacketFormat.BINARY);
+        assertEquals(new PageCall(-12L, 256, 128), PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, PacketFormat.BINARY));
+    }
+
+    @ParameterizedTest
+    @EnumSource(PacketFormat.class)
+    void cursorIsSentByValue(PacketFormat format) {
+        Object player = new Object();
+        registry.putObject(3L, player);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new MethodReturnCall(new CollectionCursor(4L, 1000, true, new Object[]{player, "second"})).send(output, registry, format);
+        MethodReturnCall created = (MethodReturnCall) PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, format);
+        CollectionCursor cursor = (CollectionCursor) created.value();
+        assertEquals(4L, cursor.id());
+        assertEquals(1000, cursor.size());
+        assertTrue(cursor.set());
+        assertSame(player, cursor.firstPage()[0]);
+        assertEquals("second", cursor.firstPage()[1]);
+    }
+}
@@ -0,0 +1,24 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ReleasePacketTest {
+
+    @Test
+    void writeAndRead() throws IOException {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        ReleasePacket packet = new ReleasePacket(new long[]{1L, -20L, 300L}, new int[]{1, 2, 1});
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        packet.send(output, registry, PacketFormat.BINARY);
+        ReleasePacket created = (ReleasePacket) PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, PacketFormat.BINARY);
+        assertArrayEquals(packet.keys(), created.keys());
+        assertArrayEquals(packet.references(), created.references());
+    }
+}
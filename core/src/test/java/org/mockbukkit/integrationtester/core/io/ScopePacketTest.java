@@ -0,0 +1,23 @@
+package org.mockbukkit.integrationtester.core.io;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScopePacketTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void writeAndRead(boolean open) throws IOException {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ScopePacket(open).send(output, registry, PacketFormat.BINARY);
+        assertEquals(new ScopePacket(open), PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, PacketFormat.BINARY));
+    }
+}
@@ -2,12 +2,21 @@ package org.mockbukkit.integrationtester.core.io;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class ServerTickPacketTest {
 
 
     @Test
-    void writeAndRead() {
+    void writeAndRead() throws IOException {
+        ObjectRegistry registry = new ObjectRegistry(Map.of());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ServerTickPacket().send(output, registry, PacketFormat.BINARY);
+        assertEquals(new ServerTickPacket(), PacketFactory.fromStream(new ByteArrayInputStream(output.toByteArray()), registry, PacketFormat.BINARY));
     }
-}
\ No newline at end of file
+}
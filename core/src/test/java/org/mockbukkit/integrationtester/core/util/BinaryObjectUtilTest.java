@@ -0,0 +1,98 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockbukkit.integrationtester.core.io.ObjectRegistry;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryObjectUtilTest {
+
+    private final ObjectRegistry registry = new ObjectRegistry(Map.of());
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 127, 128, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE})
+    void varInt(int value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryObjectUtil.writeVarInt(new DataOutputStream(bytes), value);
+        assertEquals(value, BinaryObjectUtil.readVarInt(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, -1, 63, -64, Long.MAX_VALUE, Long.MIN_VALUE})
+    void signedVarLong(long value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryObjectUtil.writeSignedVarLong(new DataOutputStream(bytes), value);
+        assertEquals(value, BinaryObjectUtil.readSignedVarLong(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        if (value >= -64 && value < 64) {
+            assertEquals(1, bytes.size());
+        }
+    }
+
+    @Test
+    void primitivesAndCollections() throws IOException {
+        List<Object> values = List.of(true, (byte) 3, (short) 4, 5, 6L, 7.5F, 8.5D, 'c', "Hello World", List.of(1, "two"), Set.of(3L));
+        for (Object value : values) {
+            assertEquals(value, roundTrip(value));
+        }
+        assertNull(roundTrip(null));
+        assertArrayEquals(new Object[]{1, "two", null}, (Object[]) roundTrip(new Object[]{1, "two", null}));
+    }
+
+    @Test
+    void markedObject() throws IOException {
+        Object object = new Object();
+        registry.putObject(300L, object);
+        assertSame(object, roundTrip(object));
+    }
+
+    @Test
+    void symbolsAreSentOnce() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        BinaryObjectUtil.writeSymbol(output, "org.bukkit.entity.Player", registry.getSentSymbols());
+        int firstSize = bytes.size();
+        BinaryObjectUtil.writeSymbol(output, "org.bukkit.entity.Player", registry.getSentSymbols());
+        assertEquals(1, bytes.size() - firstSize);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        String first = BinaryObjectUtil.readSymbol(input, registry.getReceivedSymbols());
+        assertEquals("org.bukkit.entity.Player", first);
+        assertSame(first, BinaryObjectUtil.readSymbol(input, registry.getReceivedSymbols()));
+    }
+
+    @Test
+    void repeatedValuesAreWrittenOnce() throws IOException {
+        String name = "world_the_end";
+        ByteArrayOutputStream once = new ByteArrayOutputStream();
+        BinaryObjectUtil.writeObject(new DataOutputStream(once), List.of(name), registry);
+        registry.getSentReferences().clear();
+        ByteArrayOutputStream repeated = new ByteArrayOutputStream();
+        BinaryObjectUtil.writeObject(new DataOutputStream(repeated), List.of(name, name, name, name), registry);
+        assertEquals(once.size() + 3 * 2, repeated.size());
+    }
+
+    @Test
+    void selfReferencingList() throws IOException {
+        List<Object> list = new ArrayList<>();
+        list.add("first");
+        list.add(list);
+        List<?> created = (List<?>) roundTrip(list);
+        assertEquals("first", created.get(0));
+        assertSame(created, created.get(1));
+    }
+
+    private Object roundTrip(Object value) throws IOException {
+        registry.getSentReferences().clear();
+        registry.getReceivedReferences().clear();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryObjectUtil.writeObject(new DataOutputStream(bytes), value, registry);
+        return BinaryObjectUtil.readObject(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), registry);
+    }
+}
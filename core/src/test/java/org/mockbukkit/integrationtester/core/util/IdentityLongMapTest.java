@@ -0,0 +1,45 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdentityLongMapTest {
+
+    @Test
+    void equalObjectsAreDifferentKeys() {
+        IdentityLongMap map = new IdentityLongMap();
+        String first = new String("key");
+        String second = new String("key");
+        assertTrue(map.putIfAbsent(first, 1));
+        assertTrue(map.putIfAbsent(second, 2));
+        assertFalse(map.putIfAbsent(first, 3));
+        assertEquals(1, map.get(first, -1));
+        assertEquals(2, map.get(second, -1));
+        assertEquals(-1, map.get("key", -1));
+    }
+
+    @Test
+    void growsAndRemoves() {
+        IdentityLongMap map = new IdentityLongMap();
+        List<Object> objects = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            objects.add(new Object());
+            map.putIfAbsent(objects.get(i), i);
+        }
+        for (int i = 0; i < objects.size(); i += 2) {
+            assertTrue(map.remove(objects.get(i)));
+        }
+        assertEquals(5000, map.size());
+        for (int i = 0; i < objects.size(); i++) {
+            assertEquals(i % 2 == 0 ? -1 : i, map.get(objects.get(i), -1));
+        }
+        map.clear();
+        assertFalse(map.containsKey(objects.get(1)));
+    }
+}
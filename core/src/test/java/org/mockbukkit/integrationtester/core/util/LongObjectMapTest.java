@@ -0,0 +1,46 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongObjectMapTest {
+
+    @Test
+    void putGetAndReplace() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(-1, "b"));
+        assertEquals("a", map.put(1, "c"));
+        assertEquals("c", map.get(1));
+        assertEquals("b", map.get(-1));
+        assertNull(map.get(2));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void growsAndRemoves() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        for (long i = -5000; i < 5000; i++) {
+            map.put(i, i);
+        }
+        assertEquals(10000, map.size());
+        for (long i = -5000; i < 5000; i += 2) {
+            assertEquals(i, map.remove(i));
+        }
+        assertEquals(5000, map.size());
+        // Removing must not cut off entries further along the same probe sequence
+        for (long i = -5000; i < 5000; i++) {
+            assertEquals(i % 2 != 0, map.containsKey(i));
+        }
+        assertNull(map.remove(0));
+        map.clear();
+        assertFalse(map.containsKey(1));
+        assertEquals(0, map.size());
+        map.put(1, 1L);
+        assertTrue(map.containsKey(1));
+    }
+}
@@ -0,0 +1,53 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MirrorFactoriesTest {
+
+    @Test
+    void receivedConstructorIsPreferred() {
+        Generated first = MirrorFactories.newMirror(Generated.class);
+        Generated second = MirrorFactories.newMirror(Generated.class);
+        assertNotSame(first, second);
+        assertTrue(first.received);
+        assertTrue(MirrorFactories.newMirror(GeneratedChild.class).received);
+    }
+
+    @Test
+    void parameterlessConstructorOtherwise() {
+        assertNotNull(MirrorFactories.newMirror(Implementation.class));
+    }
+
+    @Test
+    void abstractClassesCanNotBeMirrored() {
+        assertThrows(IllegalStateException.class, () -> MirrorFactories.newMirror(Abstract.class));
+    }
+
+    static class Generated {
+
+        final boolean received;
+
+        public Generated() {
+            throw new AssertionError("Called by tests only");
+        }
+
+        protected Generated(MirrorFactories.Received received) {
+            this.received = true;
+        }
+    }
+
+    static class GeneratedChild extends Generated {
+
+        protected GeneratedChild(MirrorFactories.Received received) {
+            super(received);
+        }
+    }
+
+    private static class Implementation {
+    }
+
+    abstract static class Abstract {
+    }
+}
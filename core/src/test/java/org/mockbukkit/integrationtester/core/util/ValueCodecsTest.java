@@ -0,0 +1,63 @@
+package org.mockbukkit.integrationtester.core.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueCodecsTest {
+
+    private final ValueCodec<Shape> shapes = ValueCodec.of(Shape.class, shape -> new Object[0], components -> new Square());
+    private final ValueCodec<Square> squares = ValueCodec.of(Square.class, square -> new Object[0], components -> new Square());
+
+    @AfterEach
+    void teardown() {
+        ValueCodecs.unregister(shapes);
+        ValueCodecs.unregister(squares);
+    }
+
+    @Test
+    void builtInCodecs() {
+        UUID uuid = UUID.randomUUID();
+        ValueCodec<Object> codec = ValueCodecs.find(UUID.class);
+        assertNotNull(codec);
+        assertSame(codec, ValueCodecs.get("java.util.UUID"));
+        assertEquals(uuid, codec.decode(codec.encode(uuid)));
+    }
+
+    @Test
+    void closestSupertypeIsFound() {
+        ValueCodecs.register(shapes);
+        assertSame(shapes, ValueCodecs.find(Cube.class));
+        ValueCodecs.register(squares);
+        assertSame(squares, ValueCodecs.find(Cube.class));
+        assertSame(shapes, ValueCodecs.find(Shape.class));
+        assertNull(ValueCodecs.find(List.class));
+    }
+
+    @Test
+    void unregisteredCodecsAreForgotten() {
+        ValueCodecs.register(shapes);
+        assertSame(shapes, ValueCodecs.find(Square.class));
+        ValueCodecs.unregister(shapes);
+        assertNull(ValueCodecs.find(Square.class));
+        assertThrows(IllegalStateException.class, () -> ValueCodecs.get(shapes.getName()));
+    }
+
+    @Test
+    void unknownName() {
+        assertThrows(IllegalStateException.class, () -> ValueCodecs.get("org.bukkit.UnknownValue"));
+    }
+
+    private interface Shape {
+    }
+
+    private static class Square implements Shape {
+    }
+
+    private static class Cube extends Square {
+    }
+}
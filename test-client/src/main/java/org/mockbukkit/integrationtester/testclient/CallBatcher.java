@@ -0,0 +1,130 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import org.mockbukkit.integrationtester.core.io.MemberTable;
+import org.mockbukkit.integrationtester.core.io.MethodCall;
+import org.mockbukkit.integrationtester.core.io.MethodCallBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces void and pipelined calls, whose results are never sent back, into {@link MethodCallBatch} packets. Queued
+ * calls are sent before the next value returning call or tick advance, and any failure is thrown from there
+ */
+public class CallBatcher {
+
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private final PacketDispatcher dispatcher;
+    private final MemberTable memberTable;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ThreadLocal<List<MethodCall>> tickScope = new ThreadLocal<>();
+    private List<MethodCall> queuedCalls = new ArrayList<>();
+    private final List<CompletableFuture<Void>> unconfirmedBatches = new ArrayList<>();
+
+    public CallBatcher(PacketDispatcher dispatcher, MemberTable memberTable) {
+        this.dispatcher = dispatcher;
+        this.memberTable = memberTable;
+    }
+
+    public void queue(MethodCall methodCall) {
+        List<MethodCall> scopedCalls = tickScope.get();
+        if (scopedCalls != null) {
+            scopedCalls.add(methodCall);
+            return;
+        }
+        lock.lock();
+        try {
+            queuedCalls.add(methodCall);
+            if (queuedCalls.size() >= MAX_BATCH_SIZE) {
+                sendQueuedCalls();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isInTickScope() {
+        return tickScope.get() != null;
+    }
+
+    /**
+     * Send all queued calls
+     *
+     * @return A future completing once every batch sent so far has been executed
+     */
+    public CompletableFuture<Void> flush() {
+        lock.lock();
+        try {
+            sendQueuedCalls();
+            CompletableFuture<Void> confirmation = CompletableFuture.allOf(unconfirmedBatches.toArray(CompletableFuture[]::new));
+            unconfirmedBatches.clear();
+            return confirmation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send all queued calls without waiting for them, their failures are still thrown from the next {@link #flush()}
+     */
+    public void sendQueued() {
+        lock.lock();
+        try {
+            sendQueuedCalls();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record every void call the runnable makes on this thread and send them as one batch, executed in a single tick
+     *
+     * @return A future completing once the batch has been executed
+     */
+    public CompletableFuture<Void> inTick(Runnable runnable) {
+        if (isInTickScope()) {
+            runnable.run();
+            return CompletableFuture.completedFuture(null);
+        }
+        List<MethodCall> scopedCalls = new ArrayList<>();
+        tickScope.set(scopedCalls);
+        try {
+            runnable.run();
+        } finally {
+            tickScope.remove();
+        }
+        lock.lock();
+        try {
+            CompletableFuture<Void> previous = flush();
+            return scopedCalls.isEmpty() ? previous : CompletableFuture.allOf(previous, send(scopedCalls));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sendQueuedCalls() {
+        if (queuedCalls.isEmpty()) {
+            return;
+        }
+        unconfirmedBatches.add(send(queuedCalls));
+        queuedCalls = new ArrayList<>();
+    }
+
+    private CompletableFuture<Void> send(List<MethodCall> calls) {
+        return dispatcher.request(new MethodCallBatch(calls.toArray(MethodCall[]::new)))
+                .handle((packet, throwable) -> {
+                    if (throwable == null) {
+                        return null;
+                    }
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof MirrorInvocationException exception && exception.getCallIndex() >= 0) {
+                        throw new MirrorInvocationException(exception, memberTable.getSignature(calls.get(exception.getCallIndex()).methodId()));
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+}
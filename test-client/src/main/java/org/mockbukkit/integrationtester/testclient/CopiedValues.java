@@ -0,0 +1,128 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import com.google.common.collect.MapMaker;
+import org.mockbukkit.integrationtester.core.io.ClassIndex;
+import org.mockbukkit.integrationtester.core.io.MemberTable;
+import org.mockbukkit.integrationtester.core.util.MirrorFactories;
+import org.mockbukkit.integrationtester.core.util.ValueCodec;
+import org.mockbukkit.integrationtester.core.util.ValueCodecs;
+
+import java.util.Map;
+
+/**
+ * Bukkit values the server copies instead of referencing, see BukkitValueCodecs in the test server. They are decoded
+ * into mirrors that answer the getters of their components without asking the server. Every other call sends the value
+ * along, so the server calls it on a copy of its own
+ */
+public class CopiedValues {
+
+    private static final String COMPONENT = "net.kyori.adventure.text.Component";
+
+    // By identity, weak like all mirrors. Shared, as every tester registers the same codecs
+    private static final Map<Object, Copy> COPIES = new MapMaker().weakKeys().makeMap();
+    private final ClassIndex classIndex;
+    private final MemberTable memberTable;
+
+    public CopiedValues(ClassIndex classIndex, MemberTable memberTable) {
+        this.classIndex = classIndex;
+        this.memberTable = memberTable;
+    }
+
+    /**
+     * Register the codecs, with the components in the order the server sends them
+     */
+    public void register() {
+        register("org.bukkit.Location", "getWorld", "getX", "getY", "getZ", "getYaw", "getPitch");
+        register("org.bukkit.util.Vector", "getX", "getY", "getZ");
+        register("org.bukkit.util.BoundingBox", "getMinX", "getMinY", "getMinZ", "getMaxX", "getMaxY", "getMaxZ");
+        register("org.bukkit.NamespacedKey", "getNamespace", "getKey");
+        // Serialized, nothing can be answered locally
+        register("org.bukkit.inventory.ItemStack", (String) null);
+        register(COMPONENT, null, null);
+    }
+
+    /**
+     * @param getters The parameterless method returning each component, null if there is none
+     */
+    private void register(String name, String... getters) {
+        Class<Object> mirrorType = (Class<Object>) classIndex.getMirrorClass(name);
+        if (mirrorType == null) {
+            throw new IllegalStateException("No mirror of " + name + " was generated");
+        }
+        int[] getterIds = new int[getters.length];
+        for (int i = 0; i < getters.length; i++) {
+            getterIds[i] = getters[i] == null ? -1 : memberTable.getId(name + "#" + getters[i] + "()");
+        }
+        ValueCodecs.register(ValueCodec.of(name, mirrorType, value -> encode(name, value), components -> {
+            Object mirror = MirrorFactories.newMirror(getMirrorImplementation(name, components));
+            COPIES.put(mirror, new Copy(getterIds, components));
+            return mirror;
+        }));
+    }
+
+    private Object[] encode(String name, Object value) {
+        Copy copy = COPIES.get(value);
+        if (copy == null) {
+            throw new IllegalArgumentException("Only a " + name + " received from the server can be sent to it");
+        }
+        return copy.components();
+    }
+
+    private Class<?> getMirrorImplementation(String name, Object[] components) {
+        // Components are sent with the interface they implement as well
+        Class<?> mirrorType = classIndex.getMirrorClass(name.equals(COMPONENT) ? (String) components[1] : name);
+        if (mirrorType == null) {
+            mirrorType = classIndex.getMirrorClass(name);
+        }
+        if (!mirrorType.isInterface()) {
+            return mirrorType;
+        }
+        try {
+            return Class.forName(mirrorType.getName() + "Impl", false, mirrorType.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return Whether mirrors of the class are copies of values
+     */
+    public boolean isCopied(Class<?> mirrorType) {
+        return ValueCodecs.find(mirrorType) != null;
+    }
+
+    /**
+     * Turn a mirror created on this side into a copy of the same value as a copy received from the server
+     */
+    void adopt(Object mirror, Object copy) {
+        Copy components = copy == null ? null : COPIES.get(copy);
+        if (components == null) {
+            throw new IllegalStateException("The server did not return a copy of " + mirror.getClass().getName() + " but " + copy);
+        }
+        COPIES.put(mirror, components);
+    }
+
+    public boolean isCopy(Object object) {
+        return object != null && COPIES.containsKey(object);
+    }
+
+    /**
+     * @return The component the method returns, or {@link ResultCache#MISSING} if the object is not a copy or the
+     * method does not return a component
+     */
+    public Object getComponent(Object object, int methodId) {
+        Copy copy = object == null ? null : COPIES.get(object);
+        if (copy == null) {
+            return ResultCache.MISSING;
+        }
+        for (int i = 0; i < copy.getterIds().length; i++) {
+            if (copy.getterIds()[i] == methodId) {
+                return copy.components()[i];
+            }
+        }
+        return ResultCache.MISSING;
+    }
+
+    private record Copy(int[] getterIds, Object[] components) {
+    }
+}
@@ -0,0 +1,110 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import com.google.common.collect.MapMaker;
+import org.mockbukkit.integrationtester.core.io.FieldSnapshotBatch;
+import org.mockbukkit.integrationtester.core.io.FieldSnapshotCall;
+import org.mockbukkit.integrationtester.core.io.MemberTable;
+import org.mockbukkit.integrationtester.core.io.MethodReturnCall;
+import org.mockbukkit.integrationtester.core.io.Packet;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fills the public fields of mirrors, each with one {@link FieldSnapshotCall}, sent together in one
+ * {@link FieldSnapshotBatch}. A mirror is not registered yet while it is constructed, so its fields are loaded once it
+ * is: right after the response it arrived in, or before the first call made on it if that comes first. Until then the
+ * fields hold their default values
+ */
+public class FieldLoader {
+
+    // By identity, weak like all mirrors
+    private final Map<Object, int[]> pending = new MapMaker().weakKeys().makeMap();
+    private final PaperIntegrationTester tester;
+    private final MemberTable memberTable;
+
+    public FieldLoader(PaperIntegrationTester tester, MemberTable memberTable) {
+        this.tester = tester;
+        this.memberTable = memberTable;
+    }
+
+    /**
+     * Called by the constructor of each mirror class declaring fields, so a mirror of a subclass is tracked once for
+     * its own fields and once for each superclass
+     */
+    public void track(Object mirror, int[] fieldIds) {
+        pending.merge(mirror, fieldIds, (tracked, added) -> {
+            int[] merged = Arrays.copyOf(tracked, tracked.length + added.length);
+            System.arraycopy(added, 0, merged, tracked.length, added.length);
+            return merged;
+        });
+    }
+
+    /**
+     * Load the fields of every registered mirror that still lacks them, all snapshots are requested in one packet
+     */
+    public void loadPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Object> mirrors = new ArrayList<>();
+        for (Object mirror : pending.keySet()) {
+            if (tester.registry.hasObject(mirror)) {
+                mirrors.add(mirror);
+            }
+        }
+        load(mirrors);
+    }
+
+    public void load(Object mirror) {
+        if (mirror != null && pending.containsKey(mirror) && tester.registry.hasObject(mirror)) {
+            load(List.of(mirror));
+        }
+    }
+
+    private void load(List<Object> mirrors) {
+        if (mirrors.isEmpty()) {
+            return;
+        }
+        // Fields are read after every call made before
+        CompletableFuture<Void> previousCalls = tester.getBatcher().flush();
+        FieldSnapshotCall[] snapshots = new FieldSnapshotCall[mirrors.size()];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new FieldSnapshotCall(pending.remove(mirrors.get(i)), mirrors.get(i));
+        }
+        CompletableFuture<Packet> response = tester.getDispatcher().request(new FieldSnapshotBatch(snapshots));
+        MirrorHandler.await(previousCalls);
+        Object[] values = (Object[]) ((MethodReturnCall) MirrorHandler.await(response)).value();
+        for (int i = 0; i < snapshots.length; i++) {
+            fill(mirrors.get(i), snapshots[i].fieldIds(), (Object[]) values[i]);
+        }
+    }
+
+    private void fill(Object mirror, int[] fieldIds, Object[] values) {
+        for (int i = 0; i < fieldIds.length; i++) {
+            String signature = memberTable.getSignature(fieldIds[i]);
+            String name = signature.substring(signature.indexOf('#') + 1);
+            try {
+                Field field = findField(mirror.getClass(), name);
+                field.setAccessible(true);
+                field.set(mirror, values[i]);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static Field findField(Class<?> type, String name) throws NoSuchFieldException {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            try {
+                return current.getDeclaredField(name);
+            } catch (NoSuchFieldException ignored) {
+            }
+        }
+        throw new NoSuchFieldException(type.getName() + "#" + name);
+    }
+}
@@ -1,46 +1,216 @@
 package org.mockbukkit.integrationtester.testclient;
 
+import org.mockbukkit.integrationtester.core.io.FieldFetchCall;
 import org.mockbukkit.integrationtester.core.io.MethodCall;
 import org.mockbukkit.integrationtester.core.io.MethodReturnCall;
+import org.mockbukkit.integrationtester.core.io.ObjectManager;
+import org.mockbukkit.integrationtester.core.util.MirrorFactories;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class MirrorHandler {
 
-    public static <T> T handle(String methodName, String className, Object object, Object... parameters) {
-        MethodCall methodCall = new MethodCall(className, methodName, object, parameters);
-        if (PaperIntegrationTester.instance == null) {
-            throw new IllegalStateException("You have not started PaperIntegrationTester!");
+    public static <T> T handle(int methodId, Object object, Object... parameters) {
+        T result = await(handleAsync(methodId, object, parameters));
+        loadFields();
+        return result;
+    }
+
+    public static <T> CompletableFuture<T> handleAsync(int methodId, Object object, Object... parameters) {
+        PaperIntegrationTester tester = getTester();
+        Object component = tester.getCopiedValues().getComponent(object, methodId);
+        if (component != ResultCache.MISSING) {
+            return CompletableFuture.completedFuture((T) component);
         }
-        try (OutputStream out = PaperIntegrationTester.instance.getOutput()) {
-            methodCall.send(out, PaperIntegrationTester.instance.registry);
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
+        // Any call could change what tick stable methods return
+        tester.getResultCache().dropTickStable();
+        return request(tester, methodId, object, parameters);
+    }
+
+    /**
+     * Call a method whose result can be cached, see {@link ResultStability}
+     */
+    public static <T> T handleCached(int methodId, ResultStability stability, Object object, Object... parameters) {
+        PaperIntegrationTester tester = getTester();
+        ResultCache cache = tester.getResultCache();
+        checkNotInvalidated(tester, object, parameters);
+        Object component = tester.getCopiedValues().getComponent(object, methodId);
+        if (component != ResultCache.MISSING) {
+            return (T) component;
         }
-        try (InputStream inputStream = PaperIntegrationTester.instance.getInput()) {
-            MethodReturnCall methodReturnCall = MethodReturnCall.receive(inputStream, PaperIntegrationTester.instance.registry);
-            return (T) methodReturnCall.value();
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
+        Object cached = cache.get(object, methodId);
+        if (cached != ResultCache.MISSING) {
+            return (T) cached;
         }
+        long epoch = cache.getEpoch();
+        T result = await(request(tester, methodId, object, parameters));
+        cache.put(object, methodId, stability, result, epoch);
+        loadFields();
+        return result;
     }
 
-    public static <T> T handleStatic(String functionName, String className, Object... parameters) {
-        return null;
+    private static <T> CompletableFuture<T> request(PaperIntegrationTester tester, int methodId, Object object, Object... parameters) {
+        MethodCall methodCall = new MethodCall(methodId, object, parameters);
+        checkNotInvalidated(tester, object, parameters);
+        tester.getFieldLoader().load(object);
+        if (tester.getBatcher().isInTickScope()) {
+            throw new IllegalStateException("Only void methods can be called inside PaperIntegrationTester#inTick");
+        }
+        CompletableFuture<Void> previousCalls = tester.getBatcher().flush();
+        CompletableFuture<T> returnValue = tester.getDispatcher().request(methodCall)
+                .thenApply(packet -> (T) PagedElements.wrap(tester, ((MethodReturnCall) packet).value()));
+        // Both complete in send order, failures of earlier void calls take precedence
+        return previousCalls.thenCompose(ignored -> returnValue);
     }
 
-    public static <T> T handleField(String fieldName, String className, Object fieldOwner) {
-        return null;
+    /**
+     * Call a method whose result is a mirrored object, without waiting for it. The result gets an id minted here and is
+     * queued like a void call, so a chain of calls on it is sent at once and resolved by the server in order, within one
+     * tick. Failures surface at the next call that waits for the server. The result is a mirror of its own, even if the
+     * server returns an object it sent before
+     *
+     * @param resultType The mirror class to stand in for the result, no other mirror class may implement it
+     */
+    public static <T> T handlePipelined(int methodId, Class<? extends T> resultType, Object object, Object... parameters) {
+        PaperIntegrationTester tester = getTester();
+        checkNotInvalidated(tester, object, parameters);
+        tester.getFieldLoader().load(object);
+        tester.getResultCache().dropTickStable();
+        long resultId = ObjectManager.CLIENT.nextId();
+        // Counted as received, like the server counts it as sent
+        T result = tester.registry.referenceReceived(resultId, () -> MirrorFactories.newMirror(resultType));
+        tester.getBatcher().queue(new MethodCall(methodId, resultId, object, parameters));
+        return result;
     }
 
-    public static <T> T handleStaticField(String fieldName, String fieldOwner) {
-        return null;
+    /**
+     * Called by the public constructors of mirrors. The server creates the object under an id minted here, queued like
+     * a {@link #handlePipelined pipelined} call, so the new mirror can be passed to the server right away. Failures
+     * surface at the next call that waits for the server. Values copied by {@link CopiedValues} are built by the server
+     * right away instead, and the mirror becomes a copy of the result
+     *
+     * @param type The mirror class declaring the constructor, constructors of superclasses are called as well
+     */
+    public static void handleNew(Object mirror, Class<?> type, int constructorId, Object... parameters) {
+        if (mirror.getClass() != type) {
+            // The constructor of the class actually created creates the object
+            return;
+        }
+        PaperIntegrationTester tester = getTester();
+        if (tester.getCopiedValues().isCopied(type)) {
+            // Only built by the server to learn the components the mirror answers with
+            tester.getCopiedValues().adopt(mirror, await(request(tester, constructorId, null, parameters)));
+            return;
+        }
+        checkNotInvalidated(tester, null, parameters);
+        tester.getResultCache().dropTickStable();
+        long id = ObjectManager.CLIENT.nextId();
+        tester.registry.referenceReceived(id, () -> mirror);
+        tester.getBatcher().queue(new MethodCall(constructorId, id, null, parameters));
     }
 
-    public static void trackNew(Object newObject, String className, Object... parameters) {
+    public static void handleVoid(int methodId, Object object, Object... parameters) {
+        PaperIntegrationTester tester = getTester();
+        checkNotInvalidated(tester, object, parameters);
+        if (tester.getCopiedValues().isCopy(object)) {
+            throw new IllegalStateException("This " + object.getClass().getName() + " is a copy, changing it on the server has no effect");
+        }
+        tester.getFieldLoader().load(object);
+        tester.getResultCache().dropTickStable();
+        tester.getBatcher().queue(new MethodCall(methodId, object, parameters));
+    }
+
+    /**
+     * Fail without a round trip when a mirror is used whose object the server has got rid of
+     */
+    private static void checkNotInvalidated(PaperIntegrationTester tester, Object object, Object... parameters) {
+        if (object != null && tester.registry.isInvalidated(object)) {
+            throw new IllegalStateException("The server has removed the object behind this " + object.getClass().getName());
+        }
+        for (Object parameter : parameters) {
+            if (parameter != null && tester.registry.isInvalidated(parameter)) {
+                throw new IllegalStateException("The server has removed the object behind the " + parameter.getClass().getName() + " parameter");
+            }
+        }
+    }
+
+    private static PaperIntegrationTester getTester() {
+        PaperIntegrationTester tester = PaperIntegrationTester.current();
+        if (tester == null) {
+            throw new IllegalStateException("You have not started PaperIntegrationTester!");
+        }
+        return tester;
+    }
+
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public static <T> T handleStatic(int methodId, Object... parameters) {
+        return handle(methodId, null, parameters);
+    }
+
+    public static <T> T handleField(int fieldId, Object fieldOwner) {
+        PaperIntegrationTester tester = getTester();
+        checkNotInvalidated(tester, fieldOwner);
+        tester.getFieldLoader().load(fieldOwner);
+        CompletableFuture<Void> previousCalls = tester.getBatcher().flush();
+        CompletableFuture<T> fieldValue = tester.getDispatcher().request(new FieldFetchCall(fieldId, fieldOwner))
+                .thenApply(packet -> (T) ((MethodReturnCall) packet).value());
+        T value = await(previousCalls.thenCompose(ignored -> fieldValue));
+        loadFields();
+        return value;
+    }
+
+    /**
+     * Fill the public fields of a mirror, called by its constructors. Fields are fetched in one snapshot once the
+     * mirror is registered, see {@link FieldLoader}
+     */
+    public static void handleFields(Object owner, int... fieldIds) {
+        PaperIntegrationTester tester = PaperIntegrationTester.currentIfKnown();
+        // Placeholders for static constants can be created before any tester
+        if (tester != null) {
+            tester.getFieldLoader().track(owner, fieldIds);
+        }
+    }
+
+    /**
+     * Load the fields of mirrors received by the call that just returned
+     */
+    private static void loadFields() {
+        getTester().getFieldLoader().loadPending();
+    }
+
+    /**
+     * Called by the static initializers of mirror classes, never waits for the server, see {@link StaticFields}
+     */
+    public static <T> T handleStaticField(int fieldId) {
+        PaperIntegrationTester tester = PaperIntegrationTester.currentIfKnown();
+        // Before looking, so a snapshot arriving meanwhile still fills the field in
+        StaticFields.awaitValue(fieldId);
+        Object value = tester == null ? ResultCache.MISSING : tester.getStaticFields().get(fieldId);
+        if (value == ResultCache.MISSING) {
+            return null;
+        }
+        StaticFields.received(fieldId);
+        return (T) value;
+    }
 
+    /**
+     * @param mirrorType The mirror to create as placeholder if the constant has not been fetched yet
+     */
+    public static <T> T handleStaticField(int fieldId, Class<?> mirrorType) {
+        PaperIntegrationTester tester = PaperIntegrationTester.currentIfKnown();
+        Object value = tester == null ? ResultCache.MISSING : tester.getStaticFields().get(fieldId);
+        return (T) (value == ResultCache.MISSING ? StaticFields.placeholder(fieldId, mirrorType) : value);
     }
 
 }
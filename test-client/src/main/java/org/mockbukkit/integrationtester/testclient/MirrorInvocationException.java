@@ -0,0 +1,32 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import org.mockbukkit.integrationtester.core.io.MethodExceptionCall;
+
+public class MirrorInvocationException extends RuntimeException {
+
+    private final String exceptionClass;
+    private final int callIndex;
+
+    public MirrorInvocationException(MethodExceptionCall exceptionCall) {
+        super(exceptionCall.exceptionClass() + ": " + exceptionCall.message());
+        this.exceptionClass = exceptionCall.exceptionClass();
+        this.callIndex = exceptionCall.callIndex();
+    }
+
+    /**
+     * Attribute a failure inside a batch to the call that caused it
+     */
+    public MirrorInvocationException(MirrorInvocationException batchException, String causeSignature) {
+        super(causeSignature + " failed with " + batchException.getMessage(), batchException);
+        this.exceptionClass = batchException.exceptionClass;
+        this.callIndex = batchException.callIndex;
+    }
+
+    public String getExceptionClass() {
+        return exceptionClass;
+    }
+
+    public int getCallIndex() {
+        return callIndex;
+    }
+}
@@ -0,0 +1,126 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import org.mockbukkit.integrationtester.core.io.Frame;
+import org.mockbukkit.integrationtester.core.io.MethodExceptionCall;
+import org.mockbukkit.integrationtester.core.io.Packet;
+import org.mockbukkit.integrationtester.core.io.PacketConnection;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Matches responses to the request that caused them, so that any number of threads can have requests in flight over
+ * the same connection
+ */
+public class PacketDispatcher implements AutoCloseable {
+
+    private final PacketConnection connection;
+    private final Consumer<Packet> pushHandler;
+    private final AtomicInteger requestCounter = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<Packet>> pendingRequests = new ConcurrentHashMap<>();
+    private final Thread readerThread;
+    private volatile boolean closed = false;
+    // Set once the reader stopped, nothing completes requests from then on
+    private volatile Throwable failure;
+
+    /**
+     * @param pushHandler Called on the reader thread for packets the server sends on its own
+     */
+    public PacketDispatcher(PacketConnection connection, Consumer<Packet> pushHandler) {
+        this(connection, pushHandler, runnable -> new Thread(runnable, "PaperIntegrationTester dispatcher"));
+    }
+
+    /**
+     * @param threadFactory Creates the reader thread, which decodes responses and so creates the mirrors they hold
+     */
+    public PacketDispatcher(PacketConnection connection, Consumer<Packet> pushHandler, ThreadFactory threadFactory) {
+        this.connection = connection;
+        this.pushHandler = pushHandler;
+        this.readerThread = threadFactory.newThread(this::readResponses);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    public CompletableFuture<Packet> request(Packet packet) {
+        int requestId = requestCounter.incrementAndGet();
+        CompletableFuture<Packet> response = new CompletableFuture<>();
+        pendingRequests.put(requestId, response);
+        // Checked after registering, failPending may already have gone past this request
+        Throwable failure = this.failure;
+        if (failure != null) {
+            pendingRequests.remove(requestId);
+            response.completeExceptionally(failure);
+            return response;
+        }
+        try {
+            connection.send(requestId, packet);
+            connection.flush();
+        } catch (IOException | RuntimeException e) {
+            pendingRequests.remove(requestId);
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    private void readResponses() {
+        Throwable cause = new IOException("Connection closed");
+        try {
+            while (!closed) {
+                Frame frame = connection.receiveFrame();
+                CompletableFuture<Packet> response = pendingRequests.remove(frame.requestId());
+                try {
+                    Packet packet = connection.decode(frame);
+                    if (frame.requestId() == PacketConnection.PUSH_REQUEST_ID) {
+                        pushHandler.accept(packet);
+                        continue;
+                    }
+                    if (response == null) {
+                        continue;
+                    }
+                    if (packet instanceof MethodExceptionCall exceptionCall) {
+                        response.completeExceptionally(new MirrorInvocationException(exceptionCall));
+                    } else {
+                        response.complete(packet);
+                    }
+                } catch (RuntimeException e) {
+                    if (response != null) {
+                        response.completeExceptionally(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            cause = e;
+        } catch (RuntimeException | Error e) {
+            cause = e;
+            throw e;
+        } finally {
+            failPending(cause);
+        }
+    }
+
+    private void failPending(Throwable cause) {
+        failure = cause;
+        for (Integer requestId : pendingRequests.keySet()) {
+            CompletableFuture<Packet> response = pendingRequests.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(cause);
+            }
+        }
+    }
+
+    public PacketConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        connection.close();
+        failPending(new IOException("Connection closed"));
+    }
+}
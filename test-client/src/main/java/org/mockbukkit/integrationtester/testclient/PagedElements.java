@@ -0,0 +1,71 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import org.mockbukkit.integrationtester.core.io.CollectionCursor;
+import org.mockbukkit.integrationtester.core.io.MethodReturnCall;
+import org.mockbukkit.integrationtester.core.io.PageCall;
+
+/**
+ * The elements of a collection the server pages, see {@link PaperIntegrationTester#setRemoteCollections(int)}. Each
+ * page is fetched the first time one of its elements is accessed. The snapshot on the server is released once every
+ * page has been fetched, or once the collection is collected
+ */
+class PagedElements {
+
+    private final PaperIntegrationTester tester;
+    private final long cursorId;
+    private final Object[] elements;
+    private final int pageSize;
+    private final boolean[] fetched;
+    private int remainingPages;
+
+    private PagedElements(PaperIntegrationTester tester, CollectionCursor cursor) {
+        this.tester = tester;
+        this.cursorId = cursor.id();
+        this.elements = new Object[cursor.size()];
+        this.pageSize = cursor.firstPage().length;
+        this.fetched = new boolean[(cursor.size() + pageSize - 1) / pageSize];
+        System.arraycopy(cursor.firstPage(), 0, elements, 0, pageSize);
+        fetched[0] = true;
+        this.remainingPages = fetched.length - 1;
+    }
+
+    /**
+     * @return A lazy list or set for a cursor, any other value as is
+     */
+    static Object wrap(PaperIntegrationTester tester, Object value) {
+        if (!(value instanceof CollectionCursor cursor)) {
+            return value;
+        }
+        // Registered like a mirror, so the snapshot is released when the collection is collected
+        PagedElements elements = tester.registry.referenceReceived(cursor.id(), () -> new PagedElements(tester, cursor));
+        return cursor.set() ? new PagedSet(elements) : new PagedList(elements);
+    }
+
+    int size() {
+        return elements.length;
+    }
+
+    synchronized Object get(int index) {
+        if (index < 0 || index >= elements.length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + elements.length);
+        }
+        int page = index / pageSize;
+        if (!fetched[page]) {
+            fetch(page);
+        }
+        return elements[index];
+    }
+
+    private void fetch(int page) {
+        int offset = page * pageSize;
+        MethodReturnCall response = (MethodReturnCall) MirrorHandler.await(tester.getDispatcher().request(new PageCall(cursorId, offset, pageSize)));
+        Object[] pageElements = (Object[]) response.value();
+        System.arraycopy(pageElements, 0, elements, offset, pageElements.length);
+        fetched[page] = true;
+        if (--remainingPages == 0) {
+            // Nothing left to ask for, no need to wait for the collection to be collected
+            tester.registry.forget(cursorId);
+        }
+        tester.getFieldLoader().loadPending();
+    }
+}
@@ -0,0 +1,26 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A list returned by the server a page at a time, see {@link PagedElements}. It can not be modified
+ */
+class PagedList extends AbstractList<Object> implements RandomAccess {
+
+    private final PagedElements elements;
+
+    PagedList(PagedElements elements) {
+        this.elements = elements;
+    }
+
+    @Override
+    public Object get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+}
@@ -0,0 +1,43 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set returned by the server a page at a time, see {@link PagedElements}. It can not be modified, and looking up an
+ * element iterates it
+ */
+class PagedSet extends AbstractSet<Object> {
+
+    private final PagedElements elements;
+
+    PagedSet(PagedElements elements) {
+        this.elements = elements;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < elements.size();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return elements.get(index++);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+}
@@ -1,81 +1,376 @@
 package org.mockbukkit.integrationtester.testclient;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import org.jetbrains.annotations.Nullable;
+import org.mockbukkit.integrationtester.core.io.ClassIndex;
+import org.mockbukkit.integrationtester.core.io.InvalidationPacket;
+import org.mockbukkit.integrationtester.core.io.MemberTable;
 import org.mockbukkit.integrationtester.core.io.ObjectRegistry;
-import org.mockbukkit.integrationtester.core.io.PacketVersion;
+import org.mockbukkit.integrationtester.core.io.Packet;
+import org.mockbukkit.integrationtester.core.io.PacketConnection;
+import org.mockbukkit.integrationtester.core.io.ReleasePacket;
+import org.mockbukkit.integrationtester.core.io.RemoteCollectionsPacket;
+import org.mockbukkit.integrationtester.core.io.ScopePacket;
+import org.mockbukkit.integrationtester.core.io.ServerTickPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.AbstractWaitStrategy;
 import org.testcontainers.utility.DockerImageName;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class PaperIntegrationTester implements AutoCloseable {
 
-    public static @Nullable PaperIntegrationTester instance = null;
-
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaperIntegrationTester.class);
+    private static final long RELEASE_INTERVAL = 1000;
+    private static final int PORT = 12345;
+    private static final long STARTUP_TIMEOUT = Long.getLong("paperintegrationtester.startupTimeout", 300_000);
+    private static final boolean WARM_UP_MIRRORS = !Boolean.getBoolean("paperintegrationtester.skipWarmup");
+    // The plugin answers right away once it accepted, a connection that stays silent is not the plugin
+    private static final int HANDSHAKE_TIMEOUT = 10_000;
+    private static final long MAX_PROBE_DELAY = 2_000;
+    // Not inherited, pooled threads would keep the tester of whichever thread happened to start them
+    private static final ThreadLocal<PaperIntegrationTester> BOUND = new ThreadLocal<>();
+    private static final Set<PaperIntegrationTester> RUNNING = ConcurrentHashMap.newKeySet();
 
+    private final StartupTimings startupTimings = new StartupTimings();
     private final GenericContainer<?> container;
-    public final ObjectRegistry registry = new ObjectRegistry(compileClassRemapping());
-    private final Socket socket;
+    private final ClassIndex classIndex;
+    // Mirrors are held weakly, so the server can forget the objects behind collected ones
+    public final ObjectRegistry registry;
+    private final MemberTable memberTable;
+    private final CopiedValues copiedValues;
+    private final FieldLoader fieldLoader;
+    private final StaticFields staticFields;
+    private final PacketDispatcher dispatcher;
+    private final CallBatcher batcher;
+    private final ResultCache resultCache = new ResultCache();
+    private final ScheduledExecutorService releaseExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PaperIntegrationTester releases");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long lastRenewal = System.nanoTime();
 
+    /**
+     * Start a server and connect to it. The server boots while the tables of the generated mirrors are loaded and the
+     * mirror classes warmed up, and is probed for the handshake of the plugin until it answers. How long each phase
+     * took is logged, see {@link #getStartupTimings()}
+     */
     public PaperIntegrationTester(Class<?>... plugins) {
         container = new GenericContainer<>(DockerImageName.parse("itzg/minecraft-server"))
-                .withExposedPorts(12345)
-                .withEnv("EULA", "TRUE");
-        synchronized (container) {
-            new Thread(container::start).start();
-        }
-        try {
-            this.socket = new Socket("0.0.0.0", container.getMappedPort(12345));
-            try (InputStream inputStream = socket.getInputStream()) {
-                byte version = (byte) inputStream.read();
-                if (version != PacketVersion.VERSION) {
-                    throw new IllegalStateException("Mismatching packet version for server and client.");
+                .withExposedPorts(PORT)
+                .withEnv("EULA", "TRUE")
+                // Only until the container runs, readiness is probed through the handshake instead
+                .waitingFor(new AbstractWaitStrategy() {
+                    @Override
+                    protected void waitUntilReady() {
+                    }
+                });
+        PacketDispatcher startedDispatcher = null;
+        // Mirrors created while starting belong to this tester, the dispatcher binds its reader thread as well
+        try (TesterBinding ignored = bind()) {
+            CompletableFuture<Void> containerStart = startupTimings.timeAsync("container start", container::start);
+            this.classIndex = startupTimings.time("class index", ClassIndex::load);
+            this.registry = new ObjectRegistry(classIndex, true);
+            this.memberTable = startupTimings.time("member table", MemberTable::load);
+            this.copiedValues = new CopiedValues(classIndex, memberTable);
+            this.fieldLoader = new FieldLoader(this, memberTable);
+            this.staticFields = new StaticFields(this, memberTable);
+            CompletableFuture<Void> warmup = WARM_UP_MIRRORS
+                    ? startupTimings.timeAsync("mirror warmup", classIndex::preloadClasses)
+                    : CompletableFuture.completedFuture(null);
+            copiedValues.register();
+            PacketConnection connection = startupTimings.time("server ready", () -> connect(containerStart));
+            startedDispatcher = new PacketDispatcher(connection, this::handlePush, runnable -> new Thread(() -> {
+                try (TesterBinding readerBinding = bind()) {
+                    runnable.run();
+                }
+            }, "PaperIntegrationTester dispatcher"));
+            this.dispatcher = startedDispatcher;
+            this.batcher = new CallBatcher(dispatcher, memberTable);
+            releaseExecutor.scheduleWithFixedDelay(this::sendReleases, RELEASE_INTERVAL, RELEASE_INTERVAL, TimeUnit.MILLISECONDS);
+            RUNNING.add(this);
+            startupTimings.time("static fields", staticFields::preload);
+            MirrorHandler.await(warmup);
+        } catch (RuntimeException e) {
+            RUNNING.remove(this);
+            releaseExecutor.shutdownNow();
+            if (startedDispatcher != null) {
+                try {
+                    startedDispatcher.close();
+                } catch (IOException closeFailure) {
+                    e.addSuppressed(closeFailure);
                 }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            container.stop();
+            throw e;
         }
+        startupTimings.finish();
+        LOGGER.info("Server ready after {}", startupTimings);
     }
 
-    @Override
-    public void close() throws Exception {
-        synchronized (container) {
+    /**
+     * Connect as soon as the plugin listens, retrying with a growing delay while the server boots
+     */
+    private PacketConnection connect(CompletableFuture<Void> containerStart) {
+        MirrorHandler.await(containerStart);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STARTUP_TIMEOUT);
+        long delay = 50;
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(container.getHost(), container.getMappedPort(PORT)), HANDSHAKE_TIMEOUT);
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+                PacketConnection connection = new PacketConnection(socket, registry);
+                connection.clientHandshake(PacketConnection.COMPRESSION_THRESHOLD);
+                socket.setSoTimeout(0);
+                return connection;
+            } catch (IOException e) {
+                // Refused, or closed right away by the port forwarding of the container
+                closeQuietly(socket);
+                if (!container.isRunning()) {
+                    throw new IllegalStateException("The server stopped while starting", e);
+                }
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) > deadline) {
+                    throw new IllegalStateException("The server did not accept a connection within " + STARTUP_TIMEOUT + " ms", e);
+                }
+            }
             try {
-                container.stop();
-            } finally {
-                container.close();
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the server", e);
             }
+            delay = Math.min(delay * 2, MAX_PROBE_DELAY);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return The tester bound to the current thread, otherwise the only one running, or null if none is
+     * @throws IllegalStateException If several testers are running and none is bound to the current thread
+     */
+    public static @Nullable PaperIntegrationTester current() {
+        return current(true);
+    }
+
+    /**
+     * Like {@link #current()}, but null instead of failing when several testers are running. For static initializers,
+     * which can not be retried once they failed
+     */
+    static @Nullable PaperIntegrationTester currentIfKnown() {
+        return current(false);
+    }
+
+    private static @Nullable PaperIntegrationTester current(boolean failIfSeveral) {
+        PaperIntegrationTester bound = BOUND.get();
+        if (bound != null) {
+            return bound;
+        }
+        Iterator<PaperIntegrationTester> running = RUNNING.iterator();
+        PaperIntegrationTester tester = running.hasNext() ? running.next() : null;
+        if (!running.hasNext()) {
+            return tester;
+        }
+        if (failIfSeveral) {
+            throw new IllegalStateException("Several testers are running, bind this thread to one with PaperIntegrationTester#bind");
+        }
+        return null;
+    }
+
+    /**
+     * Send the mirror calls of the current thread to this tester until the binding is closed. Several testers can be
+     * used at once like this, each by its own threads. Threads without a binding, including those the bound thread
+     * starts, can only make calls while a single tester is running
+     */
+    public TesterBinding bind() {
+        TesterBinding binding = new TesterBinding(BOUND.get());
+        BOUND.set(this);
+        return binding;
+    }
+
+    /**
+     * @return The tester bound to the current thread, or null if none is
+     */
+    static @Nullable PaperIntegrationTester bound() {
+        return BOUND.get();
+    }
+
+    static void restoreBinding(@Nullable PaperIntegrationTester previous) {
+        if (previous == null) {
+            BOUND.remove();
+        } else {
+            BOUND.set(previous);
+        }
+    }
+
+    private void handlePush(Packet packet) {
+        if (packet instanceof InvalidationPacket invalidation) {
+            for (long key : invalidation.keys()) {
+                registry.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Release collected mirrors, and renew the lease in time even when there is nothing to release
+     */
+    private void sendReleases() {
+        ReleasePacket releases = registry.pollReleases();
+        long now = System.nanoTime();
+        if (releases.keys().length == 0 && now - lastRenewal < TimeUnit.MILLISECONDS.toNanos(ReleasePacket.LEASE_DURATION / 3)) {
+            return;
+        }
+        lastRenewal = now;
+        // Pipelined calls creating released mirrors could still be queued, they have to reach the server first
+        batcher.sendQueued();
+        dispatcher.request(releases);
+    }
+
+    /**
+     * Run the runnable with all void mirror calls it makes recorded, then execute them within one server tick
+     */
+    public void inTick(Runnable runnable) {
+        try {
+            MirrorHandler.await(batcher.inTick(runnable));
+        } finally {
+            resultCache.dropTickStable();
+        }
+    }
+
+    /**
+     * Open a scope on the client and the server, all objects registered until it closes are forgotten at once when it
+     * does. Scopes nest, and have to be closed in the reverse order they were opened. Calls from other threads should
+     * not be in flight meanwhile, their results could end up in either scope
+     */
+    public RegistryScope openScope() {
+        CompletableFuture<Void> previousCalls = batcher.flush();
+        CompletableFuture<Packet> open = dispatcher.request(new ScopePacket(true));
+        MirrorHandler.await(previousCalls.thenCompose(ignored -> open));
+        // Only now, results of earlier calls belong to the enclosing scope on the server as well
+        registry.openScope();
+        return new RegistryScope(this, registry.getScopeDepth());
+    }
+
+    void closeScope(int depth) {
+        if (depth != registry.getScopeDepth()) {
+            throw new IllegalStateException("Scopes have to be closed in the reverse order they were opened");
+        }
+        CompletableFuture<Void> previousCalls = batcher.flush();
+        CompletableFuture<Packet> close = dispatcher.request(new ScopePacket(false));
+        try {
+            MirrorHandler.await(previousCalls.thenCompose(ignored -> close));
+        } finally {
+            registry.closeScope();
         }
-        socket.close();
     }
 
-    public InputStream getInput() throws IOException {
-        return socket.getInputStream();
+    /**
+     * Have methods return collections of more than pageSize elements lazily. Their size is known right away, their
+     * elements are fetched pageSize at a time as they are accessed, from a snapshot the server takes when the method
+     * returns. Such collections can not be modified. A page size of 0, the default, returns every collection whole
+     */
+    public void setRemoteCollections(int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("Negative page size: " + pageSize);
+        }
+        CompletableFuture<Void> previousCalls = batcher.flush();
+        CompletableFuture<Packet> remoteCollections = dispatcher.request(new RemoteCollectionsPacket(pageSize));
+        MirrorHandler.await(previousCalls.thenCompose(ignored -> remoteCollections));
     }
 
-    public OutputStream getOutput() throws IOException {
-        return socket.getOutputStream();
+    /**
+     * Send the content of a file along whenever it is passed to the server, which gets a copy of it in a temporary
+     * directory. Files can not be passed otherwise
+     *
+     * @param file A {@link File} or {@link java.nio.file.Path} of a regular file
+     * @return The file, to pass on
+     */
+    public <T> T upload(T file) {
+        return registry.getBlobs().upload(file);
     }
 
+    /**
+     * Wait until every call made so far has been executed and the server has started a new tick
+     */
+    public void advanceOneTick() {
+        CompletableFuture<Void> previousCalls = batcher.flush();
+        CompletableFuture<Packet> tick = dispatcher.request(new ServerTickPacket());
+        try {
+            MirrorHandler.await(previousCalls.thenCompose(ignored -> tick));
+        } finally {
+            resultCache.dropTickStable();
+        }
+    }
 
-    private Map<String, Class<?>> compileClassRemapping() {
-        try (InputStream inputStream = PaperIntegrationTester.class.getResourceAsStream("/classRemapping.json")) {
-            try (Reader reader = new InputStreamReader(inputStream)) {
-                JsonElement json = JsonParser.parseReader(reader);
-                Map<String, Class<?>> remapping = new HashMap<>();
-                for (Map.Entry<String, JsonElement> element : json.getAsJsonObject().asMap().entrySet()) {
-                    remapping.put(element.getKey(), Class.forName(element.getValue().getAsString()));
+    @Override
+    public void close() throws Exception {
+        try {
+            // Void calls nobody waited on yet still get to report their failures
+            MirrorHandler.await(batcher.flush());
+        } finally {
+            releaseExecutor.shutdownNow();
+            synchronized (container) {
+                try {
+                    container.stop();
+                } finally {
+                    container.close();
                 }
-                return remapping;
             }
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException(e);
+            dispatcher.close();
+            LOGGER.info("Disconnected, compression saved {} bytes", getBytesSaved());
+            RUNNING.remove(this);
         }
     }
 
+    /**
+     * @return How many bytes compression has kept off the wire for the packets this tester sent
+     */
+    public long getBytesSaved() {
+        return dispatcher.getConnection().getBytesSaved();
+    }
+
+    public PacketDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public CallBatcher getBatcher() {
+        return batcher;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public CopiedValues getCopiedValues() {
+        return copiedValues;
+    }
+
+    public FieldLoader getFieldLoader() {
+        return fieldLoader;
+    }
+
+    public StaticFields getStaticFields() {
+        return staticFields;
+    }
+
+    public StartupTimings getStartupTimings() {
+        return startupTimings;
+    }
 }
@@ -1,5 +1,8 @@
 package org.mockbukkit.integrationtester.testclient;
 
+import com.google.common.collect.MapMaker;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.TestInstancePostProcessor;
 import org.junit.jupiter.api.extension.TestInstancePreDestroyCallback;
@@ -11,14 +14,23 @@ import java.lang.annotation.Target;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.Map;
 
-public class PaperIntegrationTesterExtension implements TestInstancePostProcessor, TestInstancePreDestroyCallback {
+/**
+ * Starts a tester for every test instance. Its test methods run with that tester bound to their thread, so test classes
+ * can run in parallel, each against a server of its own, see {@link PaperIntegrationTester#bind()}
+ */
+public class PaperIntegrationTesterExtension implements TestInstancePostProcessor, TestInstancePreDestroyCallback, BeforeEachCallback, AfterEachCallback {
 
-    private PaperIntegrationTester integrationTester;
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(PaperIntegrationTesterExtension.class);
+
+    // By test instance, the extension is shared by all instances of a test class
+    private final Map<Object, PaperIntegrationTester> integrationTesters = new MapMaker().weakKeys().makeMap();
 
     @Override
     public void postProcessTestInstance(Object testInstance, ExtensionContext context) throws Exception {
-        this.integrationTester = new PaperIntegrationTester();
+        PaperIntegrationTester integrationTester = new PaperIntegrationTester();
+        integrationTesters.put(testInstance, integrationTester);
         injectIntoFields(testInstance, integrationTester);
     }
 
@@ -36,9 +48,40 @@ public class PaperIntegrationTesterExtension implements TestInstancePostProcesso
         }
     }
 
+    /**
+     * Every test method gets its own registry scope, objects it created do not outlive it
+     */
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        PaperIntegrationTester integrationTester = integrationTesters.get(context.getRequiredTestInstance());
+        ExtensionContext.Store store = context.getStore(NAMESPACE);
+        // Before and after each callbacks run in the thread of the test method
+        store.put(TesterBinding.class, integrationTester.bind());
+        store.put(RegistryScope.class, integrationTester.openScope());
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        ExtensionContext.Store store = context.getStore(NAMESPACE);
+        RegistryScope scope = store.remove(RegistryScope.class, RegistryScope.class);
+        TesterBinding binding = store.remove(TesterBinding.class, TesterBinding.class);
+        try {
+            if (scope != null) {
+                scope.close();
+            }
+        } finally {
+            if (binding != null) {
+                binding.close();
+            }
+        }
+    }
+
     @Override
     public void preDestroyTestInstance(ExtensionContext context) throws Exception {
-        this.integrationTester.close();
+        PaperIntegrationTester integrationTester = integrationTesters.remove(context.getRequiredTestInstance());
+        if (integrationTester != null) {
+            integrationTester.close();
+        }
     }
 
     @Target(ElementType.FIELD)
@@ -0,0 +1,29 @@
+package org.mockbukkit.integrationtester.testclient;
+
+/**
+ * A scope of the object registries on both sides, see {@link PaperIntegrationTester#openScope()}
+ */
+public class RegistryScope implements AutoCloseable {
+
+    private final PaperIntegrationTester tester;
+    private final int depth;
+    private boolean closed = false;
+
+    RegistryScope(PaperIntegrationTester tester, int depth) {
+        this.tester = tester;
+        this.depth = depth;
+    }
+
+    /**
+     * Forget every object registered in this scope, on the client and the server. Mirrors of them can not be used
+     * anymore afterwards
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        tester.closeScope(depth);
+    }
+}
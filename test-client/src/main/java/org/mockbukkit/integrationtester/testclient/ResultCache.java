@@ -0,0 +1,86 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of {@link ResultStability#IMMUTABLE} and {@link ResultStability#TICK_STABLE} mirror methods, kept per mirror
+ * for as long as the mirror lives. Tick stable results are all dropped at once by moving on to a new epoch
+ */
+public class ResultCache {
+
+    /**
+     * Returned by {@link #get(Object, int)} when nothing is cached, null is a valid result
+     */
+    public static final Object MISSING = new Object();
+    private static final int MAX_RESULTS_PER_OBJECT = 16;
+
+    private final Map<Object, Results> results = new MapMaker().weakKeys().makeMap();
+    private final AtomicLong epoch = new AtomicLong();
+
+    public Object get(Object object, int methodId) {
+        Results objectResults = results.get(object);
+        return objectResults == null ? MISSING : objectResults.get(methodId, epoch.get());
+    }
+
+    /**
+     * @param epoch The {@link #getEpoch() epoch} from before the call was sent, so a result is not cached if tick
+     *              stable results were dropped while it was in flight
+     */
+    public void put(Object object, int methodId, ResultStability stability, Object result, long epoch) {
+        if (stability == ResultStability.VOLATILE) {
+            return;
+        }
+        results.computeIfAbsent(object, ignored -> new Results()).put(methodId, result, stability == ResultStability.IMMUTABLE ? Long.MIN_VALUE : epoch);
+    }
+
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    /**
+     * Forget all tick stable results, the server ticked or is about to change something
+     */
+    public void dropTickStable() {
+        epoch.incrementAndGet();
+    }
+
+    private static final class Results {
+
+        private final int[] methodIds = new int[MAX_RESULTS_PER_OBJECT];
+        private final Object[] values = new Object[MAX_RESULTS_PER_OBJECT];
+        // The epoch the result is valid in, Long.MIN_VALUE for immutable results
+        private final long[] epochs = new long[MAX_RESULTS_PER_OBJECT];
+        private int size = 0;
+        // Once full, the oldest result is replaced
+        private int next = 0;
+
+        private synchronized Object get(int methodId, long epoch) {
+            for (int i = 0; i < size; i++) {
+                if (methodIds[i] == methodId) {
+                    return epochs[i] == Long.MIN_VALUE || epochs[i] == epoch ? values[i] : MISSING;
+                }
+            }
+            return MISSING;
+        }
+
+        private synchronized void put(int methodId, Object value, long epoch) {
+            int index = -1;
+            for (int i = 0; i < size; i++) {
+                if (methodIds[i] == methodId) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                index = size < MAX_RESULTS_PER_OBJECT ? size++ : next;
+                next = (index + 1) % MAX_RESULTS_PER_OBJECT;
+            }
+            methodIds[index] = methodId;
+            values[index] = value;
+            epochs[index] = epoch;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.mockbukkit.integrationtester.testclient;
+
+/**
+ * How long the result of a mirror method stays valid, decided by the code generator
+ */
+public enum ResultStability {
+    /**
+     * The result never changes for the same object, cached as long as the mirror lives
+     */
+    IMMUTABLE,
+    /**
+     * The result only changes when the server ticks or the client changes something, cached until then
+     */
+    TICK_STABLE,
+    /**
+     * The result can change at any time, never cached
+     */
+    VOLATILE
+}
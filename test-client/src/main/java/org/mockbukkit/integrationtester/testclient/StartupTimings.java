@@ -0,0 +1,86 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * How long each phase of starting a tester took. Phases overlap where they can, so they add up to more than the total
+ */
+public class StartupTimings {
+
+    private final long start = System.nanoTime();
+    // In the order the phases finished
+    private final Map<String, Long> durations = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile long total = -1;
+
+    <T> T time(String phase, Supplier<T> work) {
+        long phaseStart = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            durations.put(phase, System.nanoTime() - phaseStart);
+        }
+    }
+
+    void time(String phase, Runnable work) {
+        time(phase, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run the phase on a thread of its own, which inherits the tester bound to the current thread
+     */
+    CompletableFuture<Void> timeAsync(String phase, Runnable work) {
+        PaperIntegrationTester tester = PaperIntegrationTester.bound();
+        return CompletableFuture.runAsync(() -> time(phase, work), runnable -> {
+            Thread thread = new Thread(() -> {
+                if (tester == null) {
+                    runnable.run();
+                    return;
+                }
+                try (TesterBinding ignored = tester.bind()) {
+                    runnable.run();
+                }
+            }, "PaperIntegrationTester " + phase);
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    void finish() {
+        total = System.nanoTime() - start;
+    }
+
+    /**
+     * @return The milliseconds the phase took, or -1 if it has not finished
+     */
+    public long getMillis(String phase) {
+        Long duration = durations.get(phase);
+        return duration == null ? -1 : TimeUnit.NANOSECONDS.toMillis(duration);
+    }
+
+    /**
+     * @return The milliseconds from creating the tester until it was ready, or -1 if it is not yet
+     */
+    public long getTotalMillis() {
+        return total < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(total);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ");
+        synchronized (durations) {
+            for (String phase : durations.keySet()) {
+                joiner.add(phase + " " + getMillis(phase) + " ms");
+            }
+        }
+        return getTotalMillis() + " ms (" + joiner + ")";
+    }
+}
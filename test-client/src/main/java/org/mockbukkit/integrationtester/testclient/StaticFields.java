@@ -0,0 +1,145 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.mockbukkit.integrationtester.core.io.FieldSnapshotCall;
+import org.mockbukkit.integrationtester.core.io.MemberTable;
+import org.mockbukkit.integrationtester.core.io.MethodReturnCall;
+import org.mockbukkit.integrationtester.core.util.MirrorFactories;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The static constants of mirror classes. All of them are fetched in one snapshot right after connecting, so
+ * initializing a mirror class never waits for the server. A class initialized before that, which includes classes of
+ * the snapshot itself being decoded, gets a placeholder mirror for each constant of a mirrored type. Placeholders are
+ * bound to the object of the constant once the snapshot arrived. Constants of other types are generated without
+ * {@code final}, they hold null until the snapshot arrived and are set then.
+ * <p>
+ * Static fields exist once per JVM, not once per tester, and so do the placeholders and the constants awaiting a value.
+ * Testers running at the same time share the mirror of each constant, each registers it under the id its own server
+ * sent. Constants of other types keep the value of whichever tester set them first, so testers whose servers disagree
+ * on such a constant can not run in the same JVM
+ */
+public class StaticFields {
+
+    public static final String RESOURCE = "/staticFields.json";
+    // Static like the constants themselves, each tester registers them under the id its server sent
+    private static final Map<Integer, Object> PLACEHOLDERS = new ConcurrentHashMap<>();
+    // Constants without a placeholder that were initialized before their value was fetched
+    private static final Set<Integer> AWAITING_VALUE = ConcurrentHashMap.newKeySet();
+
+    // Empty for null, the reader thread looks up values while the snapshot is being decoded
+    private final Map<Integer, Optional<Object>> values = new ConcurrentHashMap<>();
+    private final PaperIntegrationTester tester;
+    private final MemberTable memberTable;
+
+    public StaticFields(PaperIntegrationTester tester, MemberTable memberTable) {
+        this.tester = tester;
+        this.memberTable = memberTable;
+    }
+
+    /**
+     * @return The value, or {@link ResultCache#MISSING} if it has not been fetched
+     */
+    public Object get(int fieldId) {
+        Optional<Object> value = values.get(fieldId);
+        return value == null ? ResultCache.MISSING : value.orElse(null);
+    }
+
+    static void awaitValue(int fieldId) {
+        AWAITING_VALUE.add(fieldId);
+    }
+
+    static void received(int fieldId) {
+        AWAITING_VALUE.remove(fieldId);
+    }
+
+    static Object placeholder(int fieldId, Class<?> mirrorType) {
+        Object placeholder = PLACEHOLDERS.get(fieldId);
+        if (placeholder != null) {
+            return placeholder;
+        }
+        // Not computeIfAbsent, creating the mirror can initialize classes asking for placeholders of their own
+        Object created = MirrorFactories.newMirror(mirrorType);
+        placeholder = PLACEHOLDERS.putIfAbsent(fieldId, created);
+        return placeholder == null ? created : placeholder;
+    }
+
+    /**
+     * @return The object all testers use for the constant, the first one received unless a placeholder exists
+     */
+    private static Object share(int fieldId, Object value) {
+        Object shared = PLACEHOLDERS.putIfAbsent(fieldId, value);
+        return shared == null ? value : shared;
+    }
+
+    public void preload() {
+        int[] fieldIds = loadIds();
+        if (fieldIds.length == 0) {
+            return;
+        }
+        MethodReturnCall snapshot = (MethodReturnCall) MirrorHandler.await(tester.getDispatcher().request(new FieldSnapshotCall(fieldIds, null)));
+        Object[] fieldValues = (Object[]) snapshot.value();
+        for (int i = 0; i < fieldIds.length; i++) {
+            Optional<Long> key = fieldValues[i] == null ? Optional.empty() : tester.registry.getKey(fieldValues[i]);
+            Object shared = key.isPresent() ? share(fieldIds[i], fieldValues[i]) : fieldValues[i];
+            if (shared != fieldValues[i]) {
+                // The shared object stands in for the one received from now on, it is what the constant holds
+                tester.registry.putObject(key.get(), shared);
+                fieldValues[i] = shared;
+            }
+            values.put(fieldIds[i], Optional.ofNullable(fieldValues[i]));
+        }
+        for (int fieldId : AWAITING_VALUE) {
+            Optional<Object> value = values.get(fieldId);
+            if (value != null) {
+                value.ifPresent(fieldValue -> setField(fieldId, fieldValue));
+                AWAITING_VALUE.remove(fieldId);
+            }
+        }
+    }
+
+    private void setField(int fieldId, Object value) {
+        String signature = memberTable.getSignature(fieldId);
+        int ownerEnd = signature.indexOf('#');
+        Class<?> mirrorClass = tester.registry.getMirrorClass(signature.substring(0, ownerEnd));
+        try {
+            if (mirrorClass == null) {
+                throw new ClassNotFoundException("No mirror of " + signature.substring(0, ownerEnd));
+            }
+            // Waits until the class finished initializing, should another thread still be at it
+            mirrorClass.getField(signature.substring(ownerEnd + 1)).set(null, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not set the static constant " + signature, e);
+        }
+    }
+
+    private static int[] loadIds() {
+        try (InputStream inputStream = StaticFields.class.getResourceAsStream(RESOURCE)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing " + RESOURCE + ", run the code generator");
+            }
+            try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+                JsonArray jsonArray = JsonParser.parseReader(reader).getAsJsonArray();
+                int[] ids = new int[jsonArray.size()];
+                int i = 0;
+                for (JsonElement element : jsonArray) {
+                    ids[i++] = element.getAsInt();
+                }
+                return ids;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
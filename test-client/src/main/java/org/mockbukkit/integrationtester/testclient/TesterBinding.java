@@ -0,0 +1,28 @@
+package org.mockbukkit.integrationtester.testclient;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A tester bound to a thread, see {@link PaperIntegrationTester#bind()}
+ */
+public class TesterBinding implements AutoCloseable {
+
+    private final @Nullable PaperIntegrationTester previous;
+    private boolean closed = false;
+
+    TesterBinding(@Nullable PaperIntegrationTester previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Restore the tester bound before, has to be called by the thread the binding was made on
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        PaperIntegrationTester.restoreBinding(previous);
+    }
+}
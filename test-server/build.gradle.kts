@@ -16,6 +16,13 @@ java {
     }
 }
 
+sourceSets {
+    main {
+        // memberIds.json, generated next to the mirror classes
+        resources.srcDir(rootProject.file("test-client/src/autogenerated/resources"))
+    }
+}
+
 dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter:5.11.3")
     implementation(project(":core"))
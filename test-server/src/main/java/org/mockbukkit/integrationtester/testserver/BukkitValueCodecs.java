@@ -0,0 +1,55 @@
+package org.mockbukkit.integrationtester.testserver;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.BoundingBox;
+import org.bukkit.util.Vector;
+import org.mockbukkit.integrationtester.core.util.ValueCodec;
+import org.mockbukkit.integrationtester.core.util.ValueCodecs;
+
+/**
+ * Bukkit types copied by value instead of referenced. The test client decodes the same components, in the same order,
+ * see CopiedValues over there
+ */
+public class BukkitValueCodecs {
+
+    private BukkitValueCodecs() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static void register() {
+        // The world is registered as it is sent. A location can lack one, and getWorld throws once it is unloaded
+        ValueCodecs.register(ValueCodec.of(Location.class,
+                location -> new Object[]{location.isWorldLoaded() ? location.getWorld() : null, location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch()},
+                components -> new Location((World) components[0], (double) components[1], (double) components[2], (double) components[3], (float) components[4], (float) components[5])));
+        ValueCodecs.register(ValueCodec.of(Vector.class,
+                vector -> new Object[]{vector.getX(), vector.getY(), vector.getZ()},
+                components -> new Vector((double) components[0], (double) components[1], (double) components[2])));
+        ValueCodecs.register(ValueCodec.of(BoundingBox.class,
+                box -> new Object[]{box.getMinX(), box.getMinY(), box.getMinZ(), box.getMaxX(), box.getMaxY(), box.getMaxZ()},
+                components -> new BoundingBox((double) components[0], (double) components[1], (double) components[2], (double) components[3], (double) components[4], (double) components[5])));
+        ValueCodecs.register(ValueCodec.of(NamespacedKey.class,
+                key -> new Object[]{key.getNamespace(), key.getKey()},
+                components -> new NamespacedKey((String) components[0], (String) components[1])));
+        ValueCodecs.register(ValueCodec.of(ItemStack.class,
+                itemStack -> new Object[]{itemStack.serializeAsBytes()},
+                components -> ItemStack.deserializeBytes((byte[]) components[0])));
+        // The interface implemented tells the client which mirror to create, a TextComponent stays one
+        ValueCodecs.register(ValueCodec.of(Component.class,
+                component -> new Object[]{GsonComponentSerializer.gson().serialize(component), getComponentType(component).getName()},
+                components -> GsonComponentSerializer.gson().deserialize((String) components[0])));
+    }
+
+    private static Class<?> getComponentType(Component component) {
+        for (Class<?> implemented : component.getClass().getInterfaces()) {
+            if (Component.class.isAssignableFrom(implemented)) {
+                return implemented;
+            }
+        }
+        return Component.class;
+    }
+}
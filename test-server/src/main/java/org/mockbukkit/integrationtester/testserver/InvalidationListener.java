@@ -0,0 +1,117 @@
+package org.mockbukkit.integrationtester.testserver;
+
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import org.bukkit.Chunk;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.jetbrains.annotations.Nullable;
+import org.mockbukkit.integrationtester.core.io.InvalidationPacket;
+import org.mockbukkit.integrationtester.core.io.ObjectRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Evicts registered entities, chunks and worlds once the server gets rid of them, and collects their ids to push to
+ * the client. Only used from the main thread
+ */
+public class InvalidationListener implements Listener {
+
+    private final ObjectRegistry registry;
+    // The server creates a new Chunk object on every lookup, the registry only knows them by identity
+    private final Map<ChunkPosition, List<Long>> chunkKeys = new HashMap<>();
+    private long[] keys = new long[16];
+    private int size = 0;
+
+    public InvalidationListener(ObjectRegistry registry) {
+        this.registry = registry;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemove(EntityRemoveFromWorldEvent event) {
+        // Players keep their object when changing worlds, they go away when quitting
+        if (!(event.getEntity() instanceof Player)) {
+            invalidate(event.getEntity());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        invalidate(event.getPlayer());
+    }
+
+    /**
+     * Remember the id of a newly registered chunk, so it is evicted when any object of the same chunk is unloaded
+     */
+    public void registered(long key, Object object) {
+        if (!(object instanceof Chunk chunk)) {
+            return;
+        }
+        List<Long> keys = chunkKeys.computeIfAbsent(ChunkPosition.of(chunk), position -> new ArrayList<>());
+        // Ids the client released meanwhile
+        keys.removeIf(registeredKey -> !registry.hasKey(registeredKey));
+        keys.add(key);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        List<Long> keys = chunkKeys.remove(ChunkPosition.of(event.getChunk()));
+        if (keys != null) {
+            for (long key : keys) {
+                invalidate(key);
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        invalidate(event.getWorld());
+    }
+
+    private void invalidate(Object object) {
+        registry.getKey(object).ifPresent(this::invalidate);
+    }
+
+    private void invalidate(long key) {
+        if (!registry.hasKey(key)) {
+            return;
+        }
+        registry.invalidate(key);
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = key;
+    }
+
+    public boolean hasPending() {
+        return size > 0;
+    }
+
+    /**
+     * @return The ids evicted since the last call, or null if there are none
+     */
+    public @Nullable InvalidationPacket poll() {
+        if (size == 0) {
+            return null;
+        }
+        InvalidationPacket packet = new InvalidationPacket(Arrays.copyOf(keys, size));
+        size = 0;
+        return packet;
+    }
+
+    private record ChunkPosition(UUID world, long chunkKey) {
+
+        private static ChunkPosition of(Chunk chunk) {
+            return new ChunkPosition(chunk.getWorld().getUID(), chunk.getChunkKey());
+        }
+    }
+}
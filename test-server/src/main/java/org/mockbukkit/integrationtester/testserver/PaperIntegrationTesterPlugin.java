@@ -1,19 +1,45 @@
 package org.mockbukkit.integrationtester.testserver;
 
 import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.Nullable;
 import org.mockbukkit.integrationtester.core.io.*;
+import org.mockbukkit.integrationtester.core.util.ObjectUtil;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 public class PaperIntegrationTesterPlugin extends JavaPlugin {
 
+    // A probe that connected but never answers should not keep the next one from connecting
+    private static final int HANDSHAKE_TIMEOUT = 10_000;
+
     private ServerSocket socketServer;
-    private ObjectRegistry registry = new ObjectRegistry();
+    private final ObjectRegistry registry = new ObjectRegistry(Map.of());
+    private final MemberTable memberTable = MemberTable.load();
+    private final Queue<Frame> incomingFrames = new ConcurrentLinkedQueue<>();
+    private final List<Integer> awaitingTick = new ArrayList<>();
+    private final InvalidationListener invalidationListener = new InvalidationListener(registry);
+    private volatile PacketConnection connection;
+    private volatile long lastHeardFrom;
+    // Collections larger than this are paged, 0 sends them whole
+    private int remoteCollectionPageSize;
 
     @Override
     public void onEnable() {
@@ -22,47 +48,268 @@ public class PaperIntegrationTesterPlugin extends JavaPlugin {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        BukkitValueCodecs.register();
+        // Results, their elements and the components of values are registered as they are sent
+        registry.registerWhenSent(ObjectManager.SERVER, invalidationListener::registered);
+        Thread connectionThread = new Thread(this::readConnection, "PaperIntegrationTester connection");
+        connectionThread.setDaemon(true);
+        connectionThread.start();
+        getServer().getPluginManager().registerEvents(invalidationListener, this);
         getServer().getScheduler().runTaskTimer(this, this::tick, 0, 1);
-        try (Socket socket = socketServer.accept()) {
-            socket.getOutputStream().write(PacketVersion.VERSION);
+    }
+
+    @Override
+    public void onDisable() {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+            socketServer.close();
+        } catch (IOException e) {
+            getSLF4JLogger().warn("Could not close test connection", e);
+        }
+    }
+
+    private void readConnection() {
+        PacketConnection packetConnection = acceptClient();
+        if (packetConnection == null) {
+            return;
+        }
+        try (packetConnection) {
+            getSLF4JLogger().info("Test client connected, packet version {}, compression threshold {}", PacketVersion.VERSION,
+                    packetConnection.getCompressionThreshold());
+            this.lastHeardFrom = System.nanoTime();
+            this.connection = packetConnection;
+            while (true) {
+                Frame frame = packetConnection.receiveFrame();
+                this.lastHeardFrom = System.nanoTime();
+                incomingFrames.add(frame);
+            }
+        } catch (EOFException | SocketException e) {
+            getSLF4JLogger().info("Test client disconnected, compression saved {} bytes", connection == null ? 0 : connection.getBytesSaved());
+            registry.clear();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void tick() {
-        try (Socket socket = socketServer.accept()) {
-            try (InputStream inputStream = socket.getInputStream()) {
-                Packet packet = PacketFactory.fromStream(inputStream, registry);
-                if (packet instanceof FieldFetchCall fieldFetchCall) {
-                    handleFieldFetch(fieldFetchCall, socket);
+    /**
+     * Accept connections until one completes the handshake. The client probes for the plugin while the server starts,
+     * and the port forwarding of the container can accept and drop connections before the plugin listens
+     *
+     * @return The connection, or null once the socket server is closed
+     */
+    private @Nullable PacketConnection acceptClient() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = socketServer.accept();
+            } catch (IOException e) {
+                return null;
+            }
+            try {
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+                PacketConnection packetConnection = new PacketConnection(socket, registry);
+                packetConnection.serverHandshake(PacketConnection.COMPRESSION_THRESHOLD);
+                socket.setSoTimeout(0);
+                return packetConnection;
+            } catch (IOException | RuntimeException e) {
+                getSLF4JLogger().warn("Dropped a connection without handshake: {}", e.toString());
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
                 }
-                if(packet instanceof MethodCall methodCall) {
-                    handleMethodCall(methodCall, socket);
+            }
+        }
+    }
+
+    private void tick() {
+        checkLease();
+        if (incomingFrames.isEmpty() && awaitingTick.isEmpty() && !invalidationListener.hasPending()) {
+            return;
+        }
+        try {
+            for (int requestId : awaitingTick) {
+                sendResponse(requestId, new MethodReturnCall(null));
+            }
+            awaitingTick.clear();
+            Frame frame;
+            while ((frame = incomingFrames.poll()) != null) {
+                Packet response = handleFrame(frame);
+                if (response != null) {
+                    sendResponse(frame.requestId(), response);
                 }
             }
+            // Including objects the calls above got rid of
+            InvalidationPacket invalidation = invalidationListener.poll();
+            if (invalidation != null) {
+                connection.send(PacketConnection.PUSH_REQUEST_ID, invalidation);
+            }
+            connection.flush();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void handleMethodCall(MethodCall methodCall, Socket socket) {
+    private void checkLease() {
+        if (connection == null || System.nanoTime() - lastHeardFrom < TimeUnit.MILLISECONDS.toNanos(ReleasePacket.LEASE_DURATION)) {
+            return;
+        }
+        int size = registry.size();
+        if (size > 0) {
+            getSLF4JLogger().warn("Test client lease expired, forgetting {} objects", size);
+            // The client still closes the scopes it opened
+            registry.forgetAll();
+        }
+    }
 
+    private void sendResponse(int requestId, Packet response) throws IOException {
+        try {
+            connection.send(requestId, response);
+        } catch (RuntimeException e) {
+            connection.send(requestId, MethodExceptionCall.from(e));
+        }
     }
 
-    private void handleFieldFetch(FieldFetchCall fieldFetchCall, Socket socket) {
+    private @Nullable Packet handleFrame(Frame frame) {
         try {
-            Class<?> clazz = Class.forName(fieldFetchCall.className());
-            Object owner = fieldFetchCall.owner();
-            String fieldName = fieldFetchCall.field();
-            Field field = clazz.getField(fieldName);
-            Object fieldValue = field.get(owner);
-            if(!registry.hasObject(fieldValue)) {
-                registry.putObject();
-            }
-        } catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException e) {
-            throw new RuntimeException(e);
+            Packet packet = connection.decode(frame);
+            if (packet instanceof FieldFetchCall fieldFetchCall) {
+                return handleFieldFetch(fieldFetchCall);
+            }
+            if (packet instanceof FieldSnapshotCall fieldSnapshotCall) {
+                return new MethodReturnCall(snapshot(fieldSnapshotCall));
+            }
+            if (packet instanceof FieldSnapshotBatch fieldSnapshotBatch) {
+                return handleSnapshotBatch(fieldSnapshotBatch);
+            }
+            if (packet instanceof MethodCall methodCall) {
+                return new MethodReturnCall(pageIfLarge(invoke(methodCall)));
+            }
+            if (packet instanceof MethodCallBatch methodCallBatch) {
+                return handleBatch(methodCallBatch);
+            }
+            if (packet instanceof PageCall pageCall) {
+                return handlePage(pageCall);
+            }
+            if (packet instanceof RemoteCollectionsPacket remoteCollectionsPacket) {
+                this.remoteCollectionPageSize = remoteCollectionsPacket.pageSize();
+                return new MethodReturnCall(null);
+            }
+            if (packet instanceof ReleasePacket releasePacket) {
+                releasePacket.releaseFrom(registry);
+                return new MethodReturnCall(null);
+            }
+            if (packet instanceof ScopePacket scopePacket) {
+                if (scopePacket.open()) {
+                    registry.openScope();
+                } else {
+                    registry.closeScope();
+                }
+                return new MethodReturnCall(null);
+            }
+            if (packet instanceof ServerTickPacket) {
+                awaitingTick.add(frame.requestId());
+                return null;
+            }
+            throw new IllegalArgumentException("Unexpected packet: " + packet);
+        } catch (InvocationTargetException e) {
+            return MethodExceptionCall.from(e.getCause());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return MethodExceptionCall.from(e);
+        }
+    }
+
+    private Packet handleBatch(MethodCallBatch methodCallBatch) {
+        MethodCall[] calls = methodCallBatch.calls();
+        for (int i = 0; i < calls.length; i++) {
+            try {
+                invoke(calls[i]);
+            } catch (InvocationTargetException e) {
+                return MethodExceptionCall.from(e.getCause(), i);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return MethodExceptionCall.from(e, i);
+            }
         }
+        return new MethodReturnCall(null);
+    }
 
+    private Object invoke(MethodCall methodCall) throws ReflectiveOperationException {
+        Member member = memberTable.getMember(methodCall.methodId());
+        // Constructors are only called for mirrors the client created, with a result id
+        Object returnValue = member instanceof Constructor<?> constructor
+                ? constructor.newInstance(methodCall.parameters())
+                : ((Method) member).invoke(methodCall.object(), methodCall.parameters());
+        if (methodCall.resultId() != MethodCall.NO_RESULT_ID) {
+            // The client already handed out an object for this result, it can not turn into null or a copied value
+            if (returnValue == null || ObjectUtil.isValue(returnValue)) {
+                throw new IllegalStateException("Pipelined call " + memberTable.getSignature(methodCall.methodId()) + " returned " + returnValue);
+            }
+            registry.putObject(methodCall.resultId(), returnValue);
+            invalidationListener.registered(methodCall.resultId(), returnValue);
+            // The mirror the client created counts as a sent reference
+            registry.referenceSent(methodCall.resultId());
+            return null;
+        }
+        return returnValue;
+    }
+
+    /**
+     * Collections that fit in a page, and all of them while paging is off, are sent whole. Either way their elements
+     * are registered as they are sent, see {@link ObjectRegistry#registerWhenSent}
+     */
+    private Object pageIfLarge(Object returnValue) {
+        if (!(returnValue instanceof Collection<?> collection) || remoteCollectionPageSize <= 0 || collection.size() <= remoteCollectionPageSize) {
+            return returnValue;
+        }
+        // A snapshot, so pages stay consistent with the size even if the collection changes meanwhile
+        Object[] elements = collection.toArray();
+        long id = ObjectManager.SERVER.nextId();
+        registry.putObject(id, elements);
+        // Released by the client like a mirror, once it fetched every page or lost the collection
+        registry.referenceSent(id);
+        Object[] firstPage = Arrays.copyOf(elements, remoteCollectionPageSize);
+        return new CollectionCursor(id, elements.length, collection instanceof Set<?>, firstPage);
+    }
+
+    private Packet handlePage(PageCall pageCall) {
+        Object[] elements = registry.getObject(pageCall.cursorId());
+        int end = Math.min(elements.length, pageCall.offset() + pageCall.length());
+        return new MethodReturnCall(Arrays.copyOfRange(elements, pageCall.offset(), end));
+    }
+
+    private Packet handleFieldFetch(FieldFetchCall fieldFetchCall) throws ReflectiveOperationException {
+        Field field = (Field) memberTable.getMember(fieldFetchCall.fieldId());
+        Object fieldValue = field.get(fieldFetchCall.owner());
+        return new MethodReturnCall(fieldValue);
+    }
+
+    private Packet handleSnapshotBatch(FieldSnapshotBatch fieldSnapshotBatch) throws ReflectiveOperationException {
+        FieldSnapshotCall[] snapshots = fieldSnapshotBatch.snapshots();
+        Object[] snapshotValues = new Object[snapshots.length];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshotValues[i] = snapshot(snapshots[i]);
+        }
+        return new MethodReturnCall(snapshotValues);
+    }
+
+    private Object[] snapshot(FieldSnapshotCall fieldSnapshotCall) throws ReflectiveOperationException {
+        int[] fieldIds = fieldSnapshotCall.fieldIds();
+        Object[] fieldValues = new Object[fieldIds.length];
+        for (int i = 0; i < fieldIds.length; i++) {
+            if (fieldSnapshotCall.owner() != null) {
+                Field field = (Field) memberTable.getMember(fieldIds[i]);
+                fieldValues[i] = field.get(fieldSnapshotCall.owner());
+                continue;
+            }
+            // Static constants are fetched all at once, one that can not be read should not fail the others
+            try {
+                Field field = (Field) memberTable.getMember(fieldIds[i]);
+                fieldValues[i] = field.get(null);
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                getSLF4JLogger().warn("Could not read static field {}", memberTable.getSignature(fieldIds[i]), e);
+            }
+        }
+        return fieldValues;
     }
 }